@@ -1,50 +1,105 @@
 package com.codepoetics.raffia.baskets
 
-import org.pcollections.PVector
-import org.pcollections.TreePVector
-
 import java.util.*
 
-class ArrayContents private constructor(private val contents: PVector<Basket>) : Iterable<Basket> {
+class ArrayContents private constructor(
+        @Volatile private var loaded: PersistentVector<Basket>?,
+        private val source: Deferred<ArrayContents>?) : Iterable<Basket> {
+
+    private constructor(contents: PersistentVector<Basket>) : this(contents, null)
+
+    private val contents: PersistentVector<Basket>
+        get() = loaded ?: source!!.load().contents.apply { loaded = this }
 
-    operator fun get(index: Int): Basket = contents[index]
+    /**
+     * The source of these contents, if they were deferred and have not yet been loaded.
+     */
+    val pendingSource: Deferred<ArrayContents>?
+        get() = if (loaded == null) source else null
 
-    fun size(): Int = contents.size
+    operator fun get(index: Int): Basket {
+        val source = source
+        return if (loaded == null && source is DeferredArray) source[index] else contents[index]
+    }
+
+    fun size(): Int {
+        val source = source
+        return if (loaded == null && source is DeferredArray) source.size() else contents.size
+    }
 
     operator fun plus(basket: Basket): ArrayContents = ArrayContents(contents.plus(basket))
 
     fun plus(index: Int, basket: Basket): ArrayContents = ArrayContents(contents.plus(index, basket))
 
-    fun with(index: Int, basket: Basket): ArrayContents = ArrayContents(contents.with(index, basket))
+    fun with(index: Int, basket: Basket): ArrayContents =
+            if (get(index) === basket) this else ArrayContents(contents.with(index, basket))
+
+    internal fun withAll(updates: Map<Int, Basket>): ArrayContents =
+            if (updates.all { get(it.key) === it.value }) this else ArrayContents(contents.withAll(updates))
 
     fun plusAll(baskets: Collection<Basket>): ArrayContents  = ArrayContents(contents.plusAll(baskets))
 
     operator fun minus(index: Int): ArrayContents = ArrayContents(contents.minus(index))
 
-    fun map(mapper: (Basket) -> Basket): ArrayContents = ArrayContents.of(contents.map(mapper))
+    /**
+     * Returns these same contents if the mapper returns every item unchanged.
+     */
+    fun map(mapper: (Basket) -> Basket): ArrayContents {
+        var items: Array<Any?>? = null
+        var index = 0
+        for (item in contents) {
+            val mapped = mapper(item)
+            if (mapped !== item) {
+                val changed = items ?: contents.toArray()
+                changed[index] = mapped
+                items = changed
+            }
+            index++
+        }
+        return if (items == null) this else ArrayContents(PersistentVector.fromArray(items))
+    }
 
     fun flatMap(itemFlatMapper: (Basket) -> Sequence<Basket>): ArrayContents = ArrayContents.of(contents.asSequence().flatMap(itemFlatMapper))
 
     val isEmpty: Boolean
-            get() = contents.isEmpty()
+            get() = size() == 0
 
     override fun iterator(): Iterator<Basket> = contents.iterator()
 
+    private var hash = 0
+    private var hashIsZero = false
+
     override fun equals(other: Any?): Boolean {
-        return this === other || other is ArrayContents && other.contents == contents
+        if (this === other) return true
+        if (other !is ArrayContents || other.size() != size() || other.hashCode() != hashCode()) return false
+
+        val mine = iterator()
+        val theirs = other.iterator()
+        while (mine.hasNext()) {
+            val item = mine.next()
+            val otherItem = theirs.next()
+            if (item !== otherItem && item != otherItem) return false
+        }
+        return true
     }
 
+    /**
+     * Computed on first use and cached, as array contents are immutable.
+     */
     override fun hashCode(): Int {
-        return contents.hashCode()
+        var h = hash
+        if (h == 0 && !hashIsZero) {
+            h = fold(1) { hash, item -> 31 * hash + item.hashCode() }
+            if (h == 0) hashIsZero = true else hash = h
+        }
+        return h
     }
 
-    override fun toString(): String {
-        return contents.toString()
-    }
+    override fun toString(): String = joinToString(", ", "[", "]")
 
     companion object {
 
-        val empty = ArrayContents(TreePVector.empty())
+        val empty = ArrayContents(PersistentVector.empty())
 
         @JvmStatic
         fun empty(): ArrayContents = empty
@@ -53,9 +108,12 @@ class ArrayContents private constructor(private val contents: PVector<Basket>) :
         fun of(vararg contents: Basket): ArrayContents = of(Arrays.asList(*contents))
 
         @JvmStatic
-        fun of(contents: Collection<Basket>): ArrayContents =ArrayContents(TreePVector.from(contents))
+        fun of(contents: Collection<Basket>): ArrayContents = ArrayContents(PersistentVector.of(contents))
+
+        fun of(contents: Sequence<Basket>): ArrayContents = of(contents.toList())
 
-        fun of(contents: Sequence<Basket>): ArrayContents = ArrayContents(contents.fold(TreePVector.empty<Basket>(), TreePVector<Basket>::plus))
+        @JvmStatic
+        fun deferred(source: Deferred<ArrayContents>): ArrayContents = ArrayContents(null, source)
     }
 
 }
@@ -0,0 +1,63 @@
+package com.codepoetics.raffia.baskets
+
+/**
+ * Canonicalises equal scalars and small containers to a single shared instance, through a bounded, thread-safe table.
+ * Containers are interned only if they have at most [maxContainerSize] items; when they are built bottom-up from
+ * already-interned items, comparing them is mostly a matter of comparing references.
+ *
+ * Baskets are only shared where they are written out identically: numbers must have the same representation, and
+ * decimals the same scale, so that `2.5` and `2.50`, or arrays holding them, are kept apart.
+ */
+class BasketInterner @JvmOverloads constructor(
+        capacity: Int = DEFAULT_CAPACITY,
+        private val maxContainerSize: Int = DEFAULT_MAX_CONTAINER_SIZE) {
+
+    private val table = InternTable<Basket>(capacity) { a, b -> identical(a, b) }
+
+    fun intern(basket: Basket): Basket = when (basket) {
+        is Basket.TrueBasket, is Basket.FalseBasket, is Basket.NullBasket -> basket
+        is Basket.ArrayBasket, is Basket.ObjectBasket ->
+            if (basket.size() <= maxContainerSize) table.intern(basket, basket.hashCode()) else basket
+        else -> table.intern(basket, basket.hashCode())
+    }
+
+    companion object {
+        const val DEFAULT_CAPACITY = 1 shl 16
+        const val DEFAULT_MAX_CONTAINER_SIZE = 16
+
+        /**
+         * Whether one basket may stand in for another. Nested containers must be the same instance, which they are
+         * where both were built from interned items; anything else would need a deep comparison.
+         */
+        private fun identical(a: Basket, b: Basket): Boolean = when (a) {
+            is Basket.NumberBasket.LongNumber -> b is Basket.NumberBasket.LongNumber && a.longValue == b.longValue
+            is Basket.NumberBasket.DoubleNumber -> b is Basket.NumberBasket.DoubleNumber &&
+                    java.lang.Double.doubleToLongBits(a.doubleValue) == java.lang.Double.doubleToLongBits(b.doubleValue)
+            is Basket.NumberBasket.DecimalNumber -> b is Basket.NumberBasket.DecimalNumber && a.numberValue == b.numberValue
+            is Basket.ArrayBasket -> b is Basket.ArrayBasket && sameItems(a.contents, b.contents)
+            is Basket.ObjectBasket -> b is Basket.ObjectBasket && sameEntries(a.properties, b.properties)
+            else -> a == b
+        }
+
+        private fun sameValue(a: Basket, b: Basket): Boolean =
+                a === b || !(a is Basket.ArrayBasket || a is Basket.ObjectBasket) && identical(a, b)
+
+        private fun sameItems(a: ArrayContents, b: ArrayContents): Boolean {
+            if (a.size() != b.size()) return false
+            for (index in 0 until a.size()) {
+                if (!sameValue(a[index], b[index])) return false
+            }
+            return true
+        }
+
+        private fun sameEntries(a: PropertySet, b: PropertySet): Boolean {
+            if (a.size() != b.size()) return false
+            val others = b.iterator()
+            for (entry in a) {
+                val other = others.next()
+                if (entry.key != other.key || !sameValue(entry.value, other.value)) return false
+            }
+            return true
+        }
+    }
+}
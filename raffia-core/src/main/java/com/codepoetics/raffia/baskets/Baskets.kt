@@ -80,15 +80,104 @@ sealed class Basket {
         override fun toString() = "\"$stringValue\""
     }
 
-    internal data class NumberBasket(val numberValue: BigDecimal) : Basket() {
+    /**
+     * Numbers are held as a `long` or `double` where they fit one, and only converted to [BigDecimal] on demand.
+     * Equality and hashing are by numeric value, whichever representation is used. A double's value is taken to be that
+     * of its [numberValue], the shortest decimal which reads back as it, in every comparison, so that equality is
+     * transitive across representations.
+     */
+    internal sealed class NumberBasket : Basket() {
+        abstract val numberValue: BigDecimal
+
+        abstract fun toDouble(): Double
+
+        fun compareTo(other: NumberBasket): Int = when (this) {
+            is LongNumber -> when (other) {
+                is LongNumber -> compareLongs(longValue, other.longValue)
+                is DoubleNumber -> compareLongToDouble(longValue, other.doubleValue)
+                is DecimalNumber -> numberValue.compareTo(other.numberValue)
+            }
+            is DoubleNumber -> when (other) {
+                is LongNumber -> -compareLongToDouble(other.longValue, doubleValue)
+                is DoubleNumber -> compareDoubles(doubleValue, other.doubleValue)
+                is DecimalNumber -> numberValue.compareTo(other.numberValue)
+            }
+            is DecimalNumber -> numberValue.compareTo(other.numberValue)
+        }
+
+        override fun equals(other: Any?): Boolean = this === other || other is NumberBasket && compareTo(other) == 0
+
+        override fun hashCode(): Int {
+            val value = toDouble()
+            if (value == 0.0) return 0
+            val bits = java.lang.Double.doubleToLongBits(value)
+            return (bits xor (bits ushr 32)).toInt()
+        }
+
         override fun toString() = "<$numberValue>"
+
+        class LongNumber(val longValue: Long) : NumberBasket() {
+            private var decimal: BigDecimal? = null
+
+            override val numberValue: BigDecimal
+                get() = decimal ?: BigDecimal.valueOf(longValue).apply { decimal = this }
+
+            override fun toDouble(): Double = longValue.toDouble()
+        }
+
+        class DoubleNumber(val doubleValue: Double) : NumberBasket() {
+            private var decimal: BigDecimal? = null
+
+            override val numberValue: BigDecimal
+                get() = decimal ?: BigDecimal.valueOf(doubleValue).apply { decimal = this }
+
+            override fun toDouble(): Double = doubleValue
+        }
+
+        class DecimalNumber(override val numberValue: BigDecimal) : NumberBasket() {
+            override fun toDouble(): Double = numberValue.toDouble()
+        }
+
+        companion object {
+            private const val EXACT_DOUBLE_LIMIT = 1L shl 53
+
+            private fun compareLongs(a: Long, b: Long): Int = if (a < b) -1 else if (a > b) 1 else 0
+
+            private fun compareDoubles(a: Double, b: Double): Int = if (a < b) -1 else if (a > b) 1 else 0
+
+            /**
+             * A long which a double holds exactly compares with a double as their shortest decimals do; any other
+             * long is compared with the double's shortest decimal directly.
+             */
+            private fun compareLongToDouble(a: Long, b: Double): Int =
+                    if (a > -EXACT_DOUBLE_LIMIT && a < EXACT_DOUBLE_LIMIT) compareDoubles(a.toDouble(), b)
+                    else BigDecimal.valueOf(a).compareTo(BigDecimal.valueOf(b))
+
+            /**
+             * Picks the cheapest representation which holds the given value exactly, scale included, so that `1.0`
+             * stays a decimal and is written back as `1.0`.
+             */
+            fun of(value: BigDecimal): NumberBasket =
+                    if (value.scale() == 0 && value.unscaledValue().bitLength() < 64) LongNumber(value.toLong())
+                    else DecimalNumber(value)
+        }
     }
 
     internal data class ObjectBasket(val properties: PropertySet) : Basket() {
+        /**
+         * The keys present in this object and beneath it, filled in by [KeySummaries] when first asked for.
+         */
+        @Volatile internal var keySummary: Long = 0
+
         override fun toString() = properties.toString()
     }
 
     internal data class ArrayBasket(val contents: ArrayContents) : Basket() {
+        /**
+         * The keys present beneath this array, filled in by [KeySummaries] when first asked for.
+         */
+        @Volatile internal var keySummary: Long = 0
+
         override fun toString() = contents.toString()
     }
 
@@ -169,7 +258,16 @@ sealed class Basket {
         fun ofString(value: String): Basket = StringBasket(value)
 
         @JvmStatic
-        fun ofNumber(value: BigDecimal): Basket = NumberBasket(value)
+        fun ofNumber(value: BigDecimal): Basket = NumberBasket.DecimalNumber(value)
+
+        @JvmStatic
+        fun ofNumber(value: Long): Basket = NumberBasket.LongNumber(value)
+
+        @JvmStatic
+        fun ofNumber(value: Double): Basket =
+                if (java.lang.Double.isNaN(value) || java.lang.Double.isInfinite(value))
+                    throw IllegalArgumentException("Cannot create number basket from non-finite value $value")
+                else NumberBasket.DoubleNumber(value)
 
         @JvmStatic
         fun ofBoolean(value: Boolean): Basket = if (value) TrueBasket else FalseBasket
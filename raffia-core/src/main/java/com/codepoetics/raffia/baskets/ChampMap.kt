@@ -0,0 +1,273 @@
+package com.codepoetics.raffia.baskets
+
+/**
+ * A persistent hash map stored as a compressed hash-array mapped prefix-tree (CHAMP). Each node keeps its inline
+ * key/value pairs at the front of a single content array and its sub-nodes at the back, indexed by two bitmaps.
+ */
+internal class ChampMap<K : Any, V : Any> private constructor(private val root: Node, val size: Int) {
+
+    operator fun get(key: K): V? {
+        @Suppress("UNCHECKED_CAST")
+        return root.find(key, hashOf(key), 0) as V?
+    }
+
+    fun containsKey(key: K): Boolean = get(key) != null
+
+    fun isEmpty(): Boolean = size == 0
+
+    fun plus(key: K, value: V): ChampMap<K, V> {
+        val change = Change()
+        val newRoot = root.updated(key, value, hashOf(key), 0, change)
+        return if (newRoot === root) this else ChampMap(newRoot, if (change.added) size + 1 else size)
+    }
+
+    operator fun minus(key: K): ChampMap<K, V> {
+        val newRoot = root.removed(key, hashOf(key), 0)
+        return if (newRoot === root) this else ChampMap(newRoot, size - 1)
+    }
+
+    private class Change {
+        var added = false
+    }
+
+    private abstract class Node {
+        abstract fun find(key: Any, hash: Int, shift: Int): Any?
+        abstract fun updated(key: Any, value: Any, hash: Int, shift: Int, change: Change): Node
+        abstract fun removed(key: Any, hash: Int, shift: Int): Node
+
+        abstract val payloadArity: Int
+        abstract val nodeArity: Int
+        abstract fun keyAt(index: Int): Any
+        abstract fun valueAt(index: Int): Any
+    }
+
+    private class BitmapIndexedNode(
+            private val dataMap: Int,
+            private val nodeMap: Int,
+            private val content: Array<Any?>) : Node() {
+
+        override val payloadArity: Int get() = Integer.bitCount(dataMap)
+        override val nodeArity: Int get() = Integer.bitCount(nodeMap)
+
+        override fun keyAt(index: Int): Any = content[2 * index]!!
+        override fun valueAt(index: Int): Any = content[2 * index + 1]!!
+
+        private fun nodeAt(index: Int): Node = content[content.size - 1 - index] as Node
+
+        override fun find(key: Any, hash: Int, shift: Int): Any? {
+            val bit = bitPos(hash, shift)
+            if (dataMap and bit != 0) {
+                val index = index(dataMap, bit)
+                val candidate = keyAt(index)
+                return if (candidate === key || candidate == key) valueAt(index) else null
+            }
+            if (nodeMap and bit != 0) {
+                return nodeAt(index(nodeMap, bit)).find(key, hash, shift + BITS)
+            }
+            return null
+        }
+
+        override fun updated(key: Any, value: Any, hash: Int, shift: Int, change: Change): Node {
+            val bit = bitPos(hash, shift)
+            if (dataMap and bit != 0) {
+                val index = index(dataMap, bit)
+                val existingKey = keyAt(index)
+                if (existingKey === key || existingKey == key) {
+                    if (valueAt(index) === value) {
+                        return this
+                    }
+                    val newContent = content.copyOf()
+                    newContent[2 * index + 1] = value
+                    return BitmapIndexedNode(dataMap, nodeMap, newContent)
+                }
+
+                change.added = true
+                val subNode = merge(existingKey, valueAt(index), hashOf(existingKey), key, value, hash, shift + BITS)
+                return migrateInlineToNode(bit, subNode)
+            }
+
+            if (nodeMap and bit != 0) {
+                val index = index(nodeMap, bit)
+                val subNode = nodeAt(index)
+                val newSubNode = subNode.updated(key, value, hash, shift + BITS, change)
+                return if (newSubNode === subNode) this else withNode(index, newSubNode)
+            }
+
+            change.added = true
+            return insertInline(bit, key, value)
+        }
+
+        override fun removed(key: Any, hash: Int, shift: Int): Node {
+            val bit = bitPos(hash, shift)
+            if (dataMap and bit != 0) {
+                val index = index(dataMap, bit)
+                val existingKey = keyAt(index)
+                return if (existingKey === key || existingKey == key) removeInline(bit, shift) else this
+            }
+
+            if (nodeMap and bit != 0) {
+                val index = index(nodeMap, bit)
+                val subNode = nodeAt(index)
+                val newSubNode = subNode.removed(key, hash, shift + BITS)
+                if (newSubNode === subNode) {
+                    return this
+                }
+                if (newSubNode.payloadArity == 1 && newSubNode.nodeArity == 0) {
+                    return if (payloadArity == 0 && nodeArity == 1) newSubNode
+                    else migrateNodeToInline(bit, newSubNode)
+                }
+                return withNode(index, newSubNode)
+            }
+
+            return this
+        }
+
+        private fun withNode(index: Int, node: Node): Node {
+            val newContent = content.copyOf()
+            newContent[content.size - 1 - index] = node
+            return BitmapIndexedNode(dataMap, nodeMap, newContent)
+        }
+
+        private fun insertInline(bit: Int, key: Any, value: Any): Node {
+            val position = 2 * index(dataMap, bit)
+            val newContent = arrayOfNulls<Any?>(content.size + 2)
+            System.arraycopy(content, 0, newContent, 0, position)
+            newContent[position] = key
+            newContent[position + 1] = value
+            System.arraycopy(content, position, newContent, position + 2, content.size - position)
+            return BitmapIndexedNode(dataMap or bit, nodeMap, newContent)
+        }
+
+        private fun removeInline(bit: Int, shift: Int): Node {
+            if (shift > 0 && payloadArity == 2 && nodeArity == 0) {
+                // The remaining entry will be inlined into (or become) a node at a shallower level, so re-index it at
+                // level 0 for the case where it becomes the root.
+                val remaining = 1 - index(dataMap, bit)
+                val remainingKey = keyAt(remaining)
+                return BitmapIndexedNode(bitPos(hashOf(remainingKey), 0), 0, arrayOf(remainingKey, valueAt(remaining)))
+            }
+
+            val position = 2 * index(dataMap, bit)
+            val newContent = arrayOfNulls<Any?>(content.size - 2)
+            System.arraycopy(content, 0, newContent, 0, position)
+            System.arraycopy(content, position + 2, newContent, position, content.size - position - 2)
+            return BitmapIndexedNode(dataMap xor bit, nodeMap, newContent)
+        }
+
+        private fun migrateInlineToNode(bit: Int, node: Node): Node {
+            val oldPosition = 2 * index(dataMap, bit)
+            val newPosition = content.size - 2 - index(nodeMap, bit)
+            val newContent = arrayOfNulls<Any?>(content.size - 1)
+            System.arraycopy(content, 0, newContent, 0, oldPosition)
+            System.arraycopy(content, oldPosition + 2, newContent, oldPosition, newPosition - oldPosition)
+            newContent[newPosition] = node
+            System.arraycopy(content, newPosition + 2, newContent, newPosition + 1, content.size - newPosition - 2)
+            return BitmapIndexedNode(dataMap xor bit, nodeMap or bit, newContent)
+        }
+
+        private fun migrateNodeToInline(bit: Int, node: Node): Node {
+            val oldPosition = content.size - 1 - index(nodeMap, bit)
+            val newPosition = 2 * index(dataMap, bit)
+            val newContent = arrayOfNulls<Any?>(content.size + 1)
+            System.arraycopy(content, 0, newContent, 0, newPosition)
+            newContent[newPosition] = node.keyAt(0)
+            newContent[newPosition + 1] = node.valueAt(0)
+            System.arraycopy(content, newPosition, newContent, newPosition + 2, oldPosition - newPosition)
+            System.arraycopy(content, oldPosition + 1, newContent, oldPosition + 2, content.size - oldPosition - 1)
+            return BitmapIndexedNode(dataMap or bit, nodeMap xor bit, newContent)
+        }
+    }
+
+    private class CollisionNode(
+            private val hash: Int,
+            private val keys: Array<Any?>,
+            private val values: Array<Any?>) : Node() {
+
+        override val payloadArity: Int get() = keys.size
+        override val nodeArity: Int get() = 0
+
+        override fun keyAt(index: Int): Any = keys[index]!!
+        override fun valueAt(index: Int): Any = values[index]!!
+
+        private fun indexOf(key: Any): Int = keys.indexOfFirst { it === key || it == key }
+
+        override fun find(key: Any, hash: Int, shift: Int): Any? {
+            val index = indexOf(key)
+            return if (index < 0) null else values[index]
+        }
+
+        override fun updated(key: Any, value: Any, hash: Int, shift: Int, change: Change): Node {
+            val index = indexOf(key)
+            if (index >= 0) {
+                if (values[index] === value) {
+                    return this
+                }
+                val newValues = values.copyOf()
+                newValues[index] = value
+                return CollisionNode(hash, keys, newValues)
+            }
+
+            change.added = true
+            val newKeys = keys.copyOf(keys.size + 1)
+            val newValues = values.copyOf(values.size + 1)
+            newKeys[keys.size] = key
+            newValues[values.size] = value
+            return CollisionNode(hash, newKeys, newValues)
+        }
+
+        override fun removed(key: Any, hash: Int, shift: Int): Node {
+            val index = indexOf(key)
+            if (index < 0) {
+                return this
+            }
+            if (keys.size == 2) {
+                val remaining = 1 - index
+                return BitmapIndexedNode(bitPos(hash, 0), 0, arrayOf(keys[remaining], values[remaining]))
+            }
+            return CollisionNode(hash, keys.without(index), values.without(index))
+        }
+
+        private fun Array<Any?>.without(index: Int): Array<Any?> {
+            val result = arrayOfNulls<Any?>(size - 1)
+            System.arraycopy(this, 0, result, 0, index)
+            System.arraycopy(this, index + 1, result, index, size - index - 1)
+            return result
+        }
+    }
+
+    companion object {
+        private const val BITS = 5
+        private const val MASK = (1 shl BITS) - 1
+        private const val HASH_BITS = 32
+
+        private val EMPTY = ChampMap<Any, Any>(BitmapIndexedNode(0, 0, arrayOfNulls(0)), 0)
+
+        @Suppress("UNCHECKED_CAST")
+        fun <K : Any, V : Any> empty(): ChampMap<K, V> = EMPTY as ChampMap<K, V>
+
+        private fun hashOf(key: Any): Int {
+            val h = key.hashCode()
+            return h xor (h ushr 16)
+        }
+
+        private fun bitPos(hash: Int, shift: Int): Int = 1 shl ((hash ushr shift) and MASK)
+
+        private fun index(bitmap: Int, bit: Int): Int = Integer.bitCount(bitmap and (bit - 1))
+
+        private fun merge(key0: Any, value0: Any, hash0: Int, key1: Any, value1: Any, hash1: Int, shift: Int): Node {
+            if (shift >= HASH_BITS) {
+                return CollisionNode(hash0, arrayOf(key0, key1), arrayOf(value0, value1))
+            }
+
+            val mask0 = (hash0 ushr shift) and MASK
+            val mask1 = (hash1 ushr shift) and MASK
+            if (mask0 != mask1) {
+                val dataMap = (1 shl mask0) or (1 shl mask1)
+                return if (mask0 < mask1) BitmapIndexedNode(dataMap, 0, arrayOf(key0, value0, key1, value1))
+                else BitmapIndexedNode(dataMap, 0, arrayOf(key1, value1, key0, value0))
+            }
+
+            return BitmapIndexedNode(0, 1 shl mask0, arrayOf(merge(key0, value0, hash0, key1, value1, hash1, shift + BITS)))
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package com.codepoetics.raffia.baskets
+
+/**
+ * Supplies the contents of an array or object when they are first needed, for example by parsing them out of a
+ * retained source document.
+ */
+interface Deferred<out T> {
+    fun load(): T
+}
+
+/**
+ * A deferred array which can answer indexed lookups without loading all of its items.
+ */
+interface DeferredArray : Deferred<ArrayContents> {
+    fun size(): Int
+    operator fun get(index: Int): Basket
+}
+
+/**
+ * A deferred object which can answer keyed lookups without loading all of its properties.
+ */
+interface DeferredObject : Deferred<PropertySet> {
+    fun size(): Int
+    operator fun get(key: String): Basket?
+}
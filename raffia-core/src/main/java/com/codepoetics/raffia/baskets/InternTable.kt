@@ -0,0 +1,38 @@
+package com.codepoetics.raffia.baskets
+
+import java.util.concurrent.atomic.AtomicReferenceArray
+
+/**
+ * A fixed-size, lossy, lock-free table of canonical instances. Each value hashes to a single slot; a value the
+ * [interchangeable] test matches with the slot's occupant is replaced by it, and any other value evicts it.
+ */
+internal class InternTable<T : Any>(
+        capacity: Int,
+        private val interchangeable: (T, T) -> Boolean = { a, b -> a == b }) {
+
+    private val slots: AtomicReferenceArray<T?>
+    private val mask: Int
+
+    init {
+        if (capacity <= 0) {
+            throw IllegalArgumentException("Intern table capacity must be positive, was $capacity")
+        }
+        val size = if (capacity >= MAX_CAPACITY) MAX_CAPACITY else Integer.highestOneBit(capacity * 2 - 1)
+        slots = AtomicReferenceArray(size)
+        mask = size - 1
+    }
+
+    fun intern(value: T, hash: Int): T {
+        val index = (hash xor (hash ushr 16)) and mask
+        val existing = slots.get(index)
+        if (existing != null && (existing === value || interchangeable(existing, value))) {
+            return existing
+        }
+        slots.lazySet(index, value)
+        return value
+    }
+
+    companion object {
+        private const val MAX_CAPACITY = 1 shl 29
+    }
+}
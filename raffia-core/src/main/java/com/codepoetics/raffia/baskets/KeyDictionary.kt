@@ -0,0 +1,16 @@
+package com.codepoetics.raffia.baskets
+
+/**
+ * A shared, bounded dictionary of property names, so that the keys of the many objects in resident documents are
+ * mostly the same few `String` instances, and can usually be compared by reference.
+ */
+object KeyDictionary {
+
+    private const val CAPACITY = 1 shl 14
+
+    private val table = InternTable<String>(CAPACITY)
+
+    @JvmStatic
+    fun intern(key: String): String = table.intern(key, key.hashCode())
+
+}
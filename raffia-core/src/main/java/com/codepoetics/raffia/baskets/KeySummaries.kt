@@ -0,0 +1,90 @@
+package com.codepoetics.raffia.baskets
+
+import java.util.*
+
+/**
+ * Summarises the keys present beneath each container as a 63-bit Bloom filter, so that a scan for a key can pass over
+ * subtrees which cannot contain it. Each key sets two bits; a summary which lacks either of a key's bits rules the key
+ * out, while one which has both may still be a false positive.
+ *
+ * Summaries are computed the first time they are asked for and cached on the containers, which are immutable, so that
+ * later scans of the same basket, or of baskets sharing its subtrees, need not compute them again. The lowest bit of a
+ * cached summary marks it as computed.
+ */
+internal object KeySummaries {
+
+    private const val COMPUTED = 1L
+
+    /**
+     * The bits the given key sets in a summary.
+     */
+    fun bitsOf(key: String): Long {
+        val hash = key.hashCode() * -0x61c88647
+        return (1L shl (1 + (hash ushr 26) % 63)) or (1L shl (1 + (hash ushr 20 and 63) % 63))
+    }
+
+    /**
+     * Whether a property whose key has the given bits may be present in the basket or beneath it.
+     */
+    fun mayContain(basket: Basket, keyBits: Long): Boolean = when (basket) {
+        is Basket.ObjectBasket, is Basket.ArrayBasket -> summaryOf(basket) and keyBits == keyBits
+        else -> false
+    }
+
+    fun summaryOf(basket: Basket): Long {
+        val cached = cached(basket)
+        return if (cached != 0L) cached else compute(basket)
+    }
+
+    private fun cached(basket: Basket): Long = when (basket) {
+        is Basket.ObjectBasket -> basket.keySummary
+        is Basket.ArrayBasket -> basket.keySummary
+        else -> COMPUTED
+    }
+
+    /**
+     * Computes the summaries of the container and of every container beneath it lacking one, children first, with an
+     * explicit stack so that deep nesting cannot overflow the call stack.
+     */
+    private fun compute(root: Basket): Long {
+        val stack = ArrayDeque<Basket>()
+        stack.push(root)
+
+        while (!stack.isEmpty()) {
+            val container = stack.peek()
+            var summary = COMPUTED
+            var complete = true
+
+            if (container is Basket.ObjectBasket) {
+                for (entry in container.properties) {
+                    summary = summary or bitsOf(entry.key)
+                    val child = cached(entry.value)
+                    if (child == 0L) {
+                        stack.push(entry.value)
+                        complete = false
+                    }
+                    summary = summary or child
+                }
+            } else {
+                for (item in container.asArray()) {
+                    val child = cached(item)
+                    if (child == 0L) {
+                        stack.push(item)
+                        complete = false
+                    }
+                    summary = summary or child
+                }
+            }
+
+            if (complete) {
+                stack.pop()
+                if (container is Basket.ObjectBasket) {
+                    container.keySummary = summary
+                } else if (container is Basket.ArrayBasket) {
+                    container.keySummary = summary
+                }
+            }
+        }
+        return cached(root)
+    }
+}
@@ -0,0 +1,337 @@
+package com.codepoetics.raffia.baskets
+
+/**
+ * A persistent vector stored as a 32-way trie of flat array chunks, with the last (partial) chunk held in a tail
+ * buffer. Lookups and in-place replacement touch at most log32(n) arrays; appends touch only the tail 31 times
+ * out of 32.
+ */
+internal class PersistentVector<T> private constructor(
+        val size: Int,
+        private val shift: Int,
+        private val root: Array<Any?>,
+        private val tail: Array<Any?>) : Iterable<T> {
+
+    private val tailOffset: Int get() = size - tail.size
+
+    @Suppress("UNCHECKED_CAST")
+    operator fun get(index: Int): T = chunkFor(index)[index and MASK] as T
+
+    fun isEmpty(): Boolean = size == 0
+
+    /**
+     * Returns the chunk holding the given index. Every chunk but the tail is exactly [WIDTH] items long, and starts at
+     * an index which is a multiple of [WIDTH].
+     */
+    fun chunkFor(index: Int): Array<Any?> {
+        if (index < 0 || index >= size) {
+            throw IndexOutOfBoundsException("Index $index out of bounds for vector of size $size")
+        }
+        if (index >= tailOffset) {
+            return tail
+        }
+
+        var node = root
+        var level = shift
+        while (level > 0) {
+            @Suppress("UNCHECKED_CAST")
+            node = node[(index ushr level) and MASK] as Array<Any?>
+            level -= BITS
+        }
+        return node
+    }
+
+    fun with(index: Int, value: T): PersistentVector<T> {
+        if (index < 0 || index >= size) {
+            throw IndexOutOfBoundsException("Index $index out of bounds for vector of size $size")
+        }
+        if (index >= tailOffset) {
+            val newTail = tail.copyOf()
+            newTail[index and MASK] = value
+            return PersistentVector(size, shift, root, newTail)
+        }
+        return PersistentVector(size, shift, assoc(shift, root, index, value), tail)
+    }
+
+    private fun assoc(level: Int, node: Array<Any?>, index: Int, value: T): Array<Any?> {
+        val copy = node.copyOf()
+        if (level == 0) {
+            copy[index and MASK] = value
+        } else {
+            val subIndex = (index ushr level) and MASK
+            @Suppress("UNCHECKED_CAST")
+            copy[subIndex] = assoc(level - BITS, node[subIndex] as Array<Any?>, index, value)
+        }
+        return copy
+    }
+
+    /**
+     * Replaces the items at several indices at once, copying each chunk and branch on their paths only once.
+     */
+    fun withAll(updates: Map<Int, T>): PersistentVector<T> {
+        if (updates.isEmpty()) {
+            return this
+        }
+
+        val indices = updates.keys.toIntArray()
+        indices.sort()
+        if (indices[0] < 0 || indices[indices.size - 1] >= size) {
+            throw IndexOutOfBoundsException("Indices ${updates.keys} out of bounds for vector of size $size")
+        }
+
+        var inTail = indices.size
+        while (inTail > 0 && indices[inTail - 1] >= tailOffset) {
+            inTail--
+        }
+
+        var newTail = tail
+        if (inTail < indices.size) {
+            newTail = tail.copyOf()
+            for (i in inTail until indices.size) {
+                newTail[indices[i] and MASK] = updates[indices[i]]
+            }
+        }
+        val newRoot = if (inTail == 0) root else assocAll(shift, root, indices, 0, inTail, updates)
+        return PersistentVector(size, shift, newRoot, newTail)
+    }
+
+    private fun assocAll(level: Int, node: Array<Any?>, indices: IntArray, from: Int, to: Int, updates: Map<Int, T>): Array<Any?> {
+        val copy = node.copyOf()
+        if (level == 0) {
+            for (i in from until to) {
+                copy[indices[i] and MASK] = updates[indices[i]]
+            }
+            return copy
+        }
+
+        var start = from
+        while (start < to) {
+            val subIndex = (indices[start] ushr level) and MASK
+            var end = start + 1
+            while (end < to && ((indices[end] ushr level) and MASK) == subIndex) {
+                end++
+            }
+            @Suppress("UNCHECKED_CAST")
+            copy[subIndex] = assocAll(level - BITS, node[subIndex] as Array<Any?>, indices, start, end, updates)
+            start = end
+        }
+        return copy
+    }
+
+    operator fun plus(value: T): PersistentVector<T> {
+        if (tail.size < WIDTH) {
+            val newTail = tail.copyOf(tail.size + 1)
+            newTail[tail.size] = value
+            return PersistentVector(size + 1, shift, root, newTail)
+        }
+
+        val tailNode = tail
+        val newTail = arrayOf<Any?>(value)
+        if ((size ushr BITS) > (1 shl shift)) {
+            val newRoot = arrayOfNulls<Any?>(WIDTH)
+            newRoot[0] = root
+            newRoot[1] = newPath(shift, tailNode)
+            return PersistentVector(size + 1, shift + BITS, newRoot, newTail)
+        }
+
+        return PersistentVector(size + 1, shift, pushTail(shift, root, tailNode), newTail)
+    }
+
+    private fun pushTail(level: Int, parent: Array<Any?>, tailNode: Array<Any?>): Array<Any?> {
+        val subIndex = ((size - 1) ushr level) and MASK
+        val copy = parent.copyOf()
+        copy[subIndex] = if (level == BITS) {
+            tailNode
+        } else {
+            @Suppress("UNCHECKED_CAST")
+            val child = parent[subIndex] as Array<Any?>?
+            if (child == null) newPath(level - BITS, tailNode) else pushTail(level - BITS, child, tailNode)
+        }
+        return copy
+    }
+
+    private fun newPath(level: Int, node: Array<Any?>): Array<Any?> {
+        if (level == 0) {
+            return node
+        }
+        val path = arrayOfNulls<Any?>(WIDTH)
+        path[0] = newPath(level - BITS, node)
+        return path
+    }
+
+    fun removeLast(): PersistentVector<T> {
+        if (size == 0) {
+            throw IllegalStateException("Cannot remove last item from empty vector")
+        }
+        if (size == 1) {
+            return empty()
+        }
+        if (tail.size > 1) {
+            return PersistentVector(size - 1, shift, root, tail.copyOf(tail.size - 1))
+        }
+
+        val newTail = chunkFor(size - 2)
+        var newRoot = popTail(shift, root) ?: EMPTY_NODE
+        var newShift = shift
+        if (shift > BITS && newRoot[1] == null) {
+            @Suppress("UNCHECKED_CAST")
+            newRoot = newRoot[0] as Array<Any?>
+            newShift -= BITS
+        }
+        return PersistentVector(size - 1, newShift, newRoot, newTail)
+    }
+
+    private fun popTail(level: Int, node: Array<Any?>): Array<Any?>? {
+        val subIndex = ((size - 2) ushr level) and MASK
+        if (level > BITS) {
+            @Suppress("UNCHECKED_CAST")
+            val newChild = popTail(level - BITS, node[subIndex] as Array<Any?>)
+            if (newChild == null && subIndex == 0) {
+                return null
+            }
+            val copy = node.copyOf()
+            copy[subIndex] = newChild
+            return copy
+        }
+        if (subIndex == 0) {
+            return null
+        }
+        val copy = node.copyOf()
+        copy[subIndex] = null
+        return copy
+    }
+
+    fun plus(index: Int, value: T): PersistentVector<T> {
+        if (index < 0 || index > size) {
+            throw IndexOutOfBoundsException("Index $index out of bounds for vector of size $size")
+        }
+        if (index == size) {
+            return plus(value)
+        }
+
+        val items = arrayOfNulls<Any?>(size + 1)
+        copyInto(items, 0, 0, index)
+        items[index] = value
+        copyInto(items, index + 1, index, size)
+        return fromArray(items)
+    }
+
+    fun minus(index: Int): PersistentVector<T> {
+        if (index < 0 || index >= size) {
+            throw IndexOutOfBoundsException("Index $index out of bounds for vector of size $size")
+        }
+        if (index == size - 1) {
+            return removeLast()
+        }
+
+        val items = arrayOfNulls<Any?>(size - 1)
+        copyInto(items, 0, 0, index)
+        copyInto(items, index, index + 1, size)
+        return fromArray(items)
+    }
+
+    fun plusAll(values: Collection<T>): PersistentVector<T> {
+        if (values.isEmpty()) {
+            return this
+        }
+
+        val items = arrayOfNulls<Any?>(size + values.size)
+        copyInto(items, 0, 0, size)
+        var i = size
+        for (value in values) {
+            items[i++] = value
+        }
+        return fromArray(items)
+    }
+
+    /**
+     * Copies the items from [from] (inclusive) to [to] (exclusive) into [target], starting at [targetOffset], one chunk
+     * at a time.
+     */
+    fun copyInto(target: Array<Any?>, targetOffset: Int, from: Int, to: Int) {
+        var index = from
+        var offset = targetOffset
+        while (index < to) {
+            val chunk = chunkFor(index)
+            val chunkStart = index and MASK
+            val count = Math.min(to - index, chunk.size - chunkStart)
+            System.arraycopy(chunk, chunkStart, target, offset, count)
+            index += count
+            offset += count
+        }
+    }
+
+    fun toArray(): Array<Any?> {
+        val items = arrayOfNulls<Any?>(size)
+        copyInto(items, 0, 0, size)
+        return items
+    }
+
+    override fun iterator(): Iterator<T> = object : Iterator<T> {
+        private var index = 0
+        private var chunk: Array<Any?> = if (size == 0) EMPTY_NODE else chunkFor(0)
+
+        override fun hasNext(): Boolean = index < size
+
+        override fun next(): T {
+            if (index >= size) {
+                throw NoSuchElementException()
+            }
+            if (index > 0 && (index and MASK) == 0) {
+                chunk = chunkFor(index)
+            }
+            @Suppress("UNCHECKED_CAST")
+            return chunk[(index++) and MASK] as T
+        }
+    }
+
+    companion object {
+        private const val BITS = 5
+        const val WIDTH = 1 shl BITS
+        private const val MASK = WIDTH - 1
+
+        private val EMPTY_NODE = arrayOfNulls<Any?>(WIDTH)
+        private val EMPTY = PersistentVector<Any?>(0, BITS, EMPTY_NODE, arrayOfNulls<Any?>(0))
+
+        @Suppress("UNCHECKED_CAST")
+        fun <T> empty(): PersistentVector<T> = EMPTY as PersistentVector<T>
+
+        fun <T> of(values: Collection<T>): PersistentVector<T> = fromArray((values as Collection<Any?>).toTypedArray())
+
+        /**
+         * Builds a vector bottom-up from an array of items, which becomes owned by the vector.
+         */
+        fun <T> fromArray(items: Array<Any?>): PersistentVector<T> {
+            val count = items.size
+            if (count == 0) {
+                return empty()
+            }
+
+            val tailOffset = ((count - 1) ushr BITS) shl BITS
+            val tail = items.copyOfRange(tailOffset, count)
+            if (tailOffset == 0) {
+                return PersistentVector(count, BITS, EMPTY_NODE, tail)
+            }
+
+            var nodes = arrayOfNulls<Any?>(tailOffset ushr BITS)
+            for (i in nodes.indices) {
+                nodes[i] = items.copyOfRange(i shl BITS, (i + 1) shl BITS)
+            }
+
+            var level = BITS
+            while (true) {
+                val parents = arrayOfNulls<Any?>((nodes.size + MASK) ushr BITS)
+                for (i in parents.indices) {
+                    val parent = arrayOfNulls<Any?>(WIDTH)
+                    System.arraycopy(nodes, i shl BITS, parent, 0, Math.min(WIDTH, nodes.size - (i shl BITS)))
+                    parents[i] = parent
+                }
+                if (parents.size == 1) {
+                    @Suppress("UNCHECKED_CAST")
+                    return PersistentVector(count, level, parents[0] as Array<Any?>, tail)
+                }
+                nodes = parents
+                level += BITS
+            }
+        }
+    }
+}
@@ -1,10 +1,5 @@
 package com.codepoetics.raffia.baskets
 
-import org.pcollections.HashTreePMap
-import org.pcollections.PMap
-import org.pcollections.PVector
-import org.pcollections.TreePVector
-
 import java.util.*
 
 data class ObjectEntry(val key: String, val value: Basket) {
@@ -20,78 +15,368 @@ data class ObjectEntry(val key: String, val value: Basket) {
     }
 }
 
-class PropertySet private constructor(private val keys: PVector<String>, private val properties: PMap<String, Basket>)
-    : Iterable<ObjectEntry> {
+sealed class PropertySet : Iterable<ObjectEntry> {
+
+    abstract fun with(key: String, basket: Basket): PropertySet
+
+    abstract fun size(): Int
 
-    fun with(key: String, basket: Basket): PropertySet =
-        if (properties.containsKey(key))
-            PropertySet(keys, properties.plus(key, basket))
-        else
-            PropertySet(keys.plus(key), properties.plus(key, basket))
+    abstract operator fun get(key: String): Basket?
 
+    internal abstract operator fun get(slotCache: SlotCache): Basket?
 
-    fun size(): Int = properties.size
+    fun containsKey(key: String): Boolean = get(key) != null
 
-    operator fun get(key: String): Basket? = properties[key]
+    abstract operator fun minus(key: String): PropertySet
 
-    fun containsKey(key: String): Boolean = properties.containsKey(key)
+    /**
+     * Sets several properties at once, copying this set's storage only once where the keys are already present.
+     */
+    internal open fun withAll(updates: Map<String, Basket>): PropertySet = withEach(updates)
 
-    operator fun minus(key: String): PropertySet = PropertySet(keys.minus(key), properties.minus(key))
+    protected fun withEach(updates: Map<String, Basket>): PropertySet =
+            updates.entries.fold(this) { properties, entry -> properties.with(entry.key, entry.value) }
 
     fun toMap(): Map<String, Basket> {
         val result = LinkedHashMap<String, Basket>()
-        keys.forEach { result.put(it, properties[it]!!) }
+        forEach { result.put(it.key, it.value) }
         return result
     }
 
     val isEmpty: Boolean
-        get() = properties.isEmpty()
+        get() = size() == 0
+
+    private var hash = 0
+    private var hashIsZero = false
 
     override fun equals(other: Any?): Boolean {
-        return this === other || other is PropertySet
-                && PropertySet::class.java.cast(other).keys == keys
-                && PropertySet::class.java.cast(other).properties == properties
+        if (this === other) return true
+        if (other !is PropertySet || other.size() != size() || other.hashCode() != hashCode()) return false
+
+        if (this is Shaped && other is Shaped && shape === other.shape) {
+            for (i in values.indices) {
+                if (values[i] !== other.values[i] && values[i] != other.values[i]) return false
+            }
+            return true
+        }
+
+        val mine = iterator()
+        val theirs = other.iterator()
+        while (mine.hasNext()) {
+            if (mine.next() != theirs.next()) return false
+        }
+        return true
     }
 
+    /**
+     * Computed on first use and cached, as property sets are immutable.
+     */
     override fun hashCode(): Int {
-        return Objects.hash(keys.hashCode(), properties.hashCode())
+        var h = hash
+        if (h == 0 && !hashIsZero) {
+            h = fold(1) { hash, entry -> 31 * hash + entry.hashCode() }
+            if (h == 0) hashIsZero = true else hash = h
+        }
+        return h
     }
 
     override fun toString(): String {
         return toMap().toString()
     }
 
-    override fun iterator(): Iterator<ObjectEntry> {
-        val keyIterator = keys.iterator()
-        return object : Iterator<ObjectEntry> {
-            override fun hasNext(): Boolean = keyIterator.hasNext()
+    /**
+     * Returns this same set if the mapper returns every value unchanged.
+     */
+    open fun mapValues(valueMapper: (Basket) -> Basket): PropertySet = mapEntryValues { valueMapper(it.value) }
 
-            override fun next(): ObjectEntry = keyIterator.next().let { ObjectEntry.of(it, properties[it]!!) }
+    internal fun mapEntryValues(valueMapper: (ObjectEntry) -> Basket): PropertySet {
+        var updates: MutableMap<String, Basket>? = null
+        for (entry in this) {
+            val mapped = valueMapper(entry)
+            if (mapped !== entry.value) {
+                updates = (updates ?: LinkedHashMap<String, Basket>()).apply { put(entry.key, mapped) }
+            }
         }
+        return if (updates == null) this else withAll(updates)
     }
 
-    fun mapValues(valueMapper: (Basket) -> Basket): PropertySet =
-        PropertySet.of(map { entry -> ObjectEntry.of(entry.key, valueMapper(entry.value)) })
-
     fun mapEntries(entryMapper: (ObjectEntry) -> Sequence<ObjectEntry>): PropertySet =
             PropertySet.of(asSequence().flatMap(entryMapper))
 
+    /**
+     * A small object, holding only its values in slot order plus a pointer to a shared [Shape].
+     */
+    private class Shaped(val shape: Shape, val values: Array<Basket>) : PropertySet() {
+
+        override fun size(): Int = values.size
+
+        override fun get(key: String): Basket? {
+            val slot = shape.slotOf(key)
+            return if (slot < 0) null else values[slot]
+        }
+
+        override fun get(slotCache: SlotCache): Basket? {
+            val slot = slotCache.slotIn(shape)
+            return if (slot < 0) null else values[slot]
+        }
+
+        override fun with(key: String, basket: Basket): PropertySet {
+            val slot = shape.slotOf(key)
+            if (slot >= 0) {
+                if (values[slot] === basket) {
+                    return this
+                }
+                val newValues = values.copyOf()
+                newValues[slot] = basket
+                return Shaped(shape, newValues)
+            }
+
+            if (values.size == SHAPED_LIMIT) {
+                return Hashed.of(this).with(key, basket)
+            }
+
+            val newValues = values.copyOf(values.size + 1)
+            newValues[values.size] = basket
+            @Suppress("UNCHECKED_CAST")
+            return Shaped(shape.with(key), newValues as Array<Basket>)
+        }
+
+        override fun withAll(updates: Map<String, Basket>): PropertySet {
+            if (updates.isEmpty()) {
+                return this
+            }
+
+            var newValues: Array<Basket>? = null
+            var added: MutableMap<String, Basket>? = null
+            for ((key, value) in updates) {
+                val slot = shape.slotOf(key)
+                if (slot < 0) {
+                    added = (added ?: LinkedHashMap<String, Basket>()).apply { put(key, value) }
+                } else if (values[slot] !== value) {
+                    val changed = newValues ?: values.copyOf()
+                    changed[slot] = value
+                    newValues = changed
+                }
+            }
+            val updated = if (newValues == null) this else Shaped(shape, newValues)
+            return if (added == null) updated else updated.withEach(added)
+        }
+
+        override fun minus(key: String): PropertySet {
+            val slot = shape.slotOf(key)
+            if (slot < 0) {
+                return this
+            }
+
+            @Suppress("UNCHECKED_CAST")
+            val newValues = arrayOfNulls<Basket>(values.size - 1) as Array<Basket>
+            System.arraycopy(values, 0, newValues, 0, slot)
+            System.arraycopy(values, slot + 1, newValues, slot, values.size - slot - 1)
+            return Shaped(shape.without(slot), newValues)
+        }
+
+        override fun mapValues(valueMapper: (Basket) -> Basket): PropertySet {
+            var newValues: Array<Basket>? = null
+            for (i in values.indices) {
+                val mapped = valueMapper(values[i])
+                if (mapped !== values[i]) {
+                    val changed = newValues ?: values.copyOf()
+                    changed[i] = mapped
+                    newValues = changed
+                }
+            }
+            return if (newValues == null) this else Shaped(shape, newValues)
+        }
+
+        override fun iterator(): Iterator<ObjectEntry> = object : Iterator<ObjectEntry> {
+            private var slot = 0
+
+            override fun hasNext(): Boolean = slot < values.size
+
+            override fun next(): ObjectEntry {
+                if (slot >= values.size) throw NoSuchElementException()
+                return ObjectEntry.of(shape.keyAt(slot), values[slot++])
+            }
+        }
+
+        companion object {
+            val EMPTY = Shaped(Shape.EMPTY, arrayOf())
+
+            fun of(entries: Collection<ObjectEntry>): PropertySet {
+                var shape = Shape.EMPTY
+                val values = arrayOfNulls<Basket>(entries.size)
+                var count = 0
+                for ((key, value) in entries) {
+                    val slot = shape.slotOf(key)
+                    if (slot >= 0) {
+                        values[slot] = value
+                    } else {
+                        shape = shape.with(key)
+                        values[count++] = value
+                    }
+                }
+                @Suppress("UNCHECKED_CAST")
+                return Shaped(shape, (if (count == values.size) values else values.copyOf(count)) as Array<Basket>)
+            }
+        }
+    }
+
+    /**
+     * A wide object, holding a CHAMP trie which maps each key to its slot in a vector of entries.
+     */
+    private class Hashed(
+            val indices: ChampMap<String, Int>,
+            val entries: PersistentVector<ObjectEntry?>) : PropertySet() {
+
+        override fun size(): Int = indices.size
+
+        override fun get(key: String): Basket? = indices[key]?.let { entries[it]!!.value }
+
+        override fun get(slotCache: SlotCache): Basket? = get(slotCache.key)
+
+        override fun with(key: String, basket: Basket): PropertySet {
+            val index = indices[key]
+            if (index == null) {
+                val canonicalKey = KeyDictionary.intern(key)
+                return Hashed(indices.plus(canonicalKey, entries.size), entries.plus(ObjectEntry.of(canonicalKey, basket)))
+            }
+            val existing = entries[index]!!
+            return if (existing.value === basket) this
+            else Hashed(indices, entries.with(index, ObjectEntry.of(existing.key, basket)))
+        }
+
+        override fun withAll(updates: Map<String, Basket>): PropertySet {
+            val replaced = HashMap<Int, ObjectEntry?>()
+            var added: MutableMap<String, Basket>? = null
+            for ((key, value) in updates) {
+                val index = indices[key]
+                if (index != null) {
+                    val existing = entries[index]!!
+                    if (existing.value !== value) replaced[index] = ObjectEntry.of(existing.key, value)
+                } else {
+                    added = (added ?: LinkedHashMap<String, Basket>()).apply { put(key, value) }
+                }
+            }
+            val updated = if (replaced.isEmpty()) this else Hashed(indices, entries.withAll(replaced))
+            return if (added == null) updated else updated.withEach(added)
+        }
+
+        override fun minus(key: String): PropertySet {
+            val index = indices[key] ?: return this
+            val remaining = indices.minus(key)
+
+            if (remaining.size <= SHAPED_LIMIT / 2) {
+                return Shaped.of(filter { it.key != key })
+            }
+
+            if (index == entries.size - 1) {
+                var trimmed = entries.removeLast()
+                while (!trimmed.isEmpty() && trimmed[trimmed.size - 1] == null) {
+                    trimmed = trimmed.removeLast()
+                }
+                return Hashed(remaining, trimmed)
+            }
+
+            val holed = entries.with(index, null)
+            return if (remaining.size * 2 < holed.size) of(holed) else Hashed(remaining, holed)
+        }
+
+        override fun iterator(): Iterator<ObjectEntry> {
+            val entryIterator = entries.iterator()
+            return object : Iterator<ObjectEntry> {
+                private var nextEntry: ObjectEntry? = advance()
+
+                private fun advance(): ObjectEntry? {
+                    while (entryIterator.hasNext()) {
+                        val entry = entryIterator.next()
+                        if (entry != null) return entry
+                    }
+                    return null
+                }
+
+                override fun hasNext(): Boolean = nextEntry != null
+
+                override fun next(): ObjectEntry {
+                    val result = nextEntry ?: throw NoSuchElementException()
+                    nextEntry = advance()
+                    return result
+                }
+            }
+        }
+
+        companion object {
+            fun of(entries: Iterable<ObjectEntry?>): Hashed {
+                var indices = ChampMap.empty<String, Int>()
+                val items = ArrayList<ObjectEntry?>()
+                for (entry in entries) {
+                    if (entry == null) continue
+
+                    val index = indices[entry.key]
+                    if (index == null) {
+                        val canonicalKey = KeyDictionary.intern(entry.key)
+                        indices = indices.plus(canonicalKey, items.size)
+                        items.add(if (canonicalKey === entry.key) entry else ObjectEntry.of(canonicalKey, entry.value))
+                    } else {
+                        items[index] = ObjectEntry.of(items[index]!!.key, entry.value)
+                    }
+                }
+                return Hashed(indices, PersistentVector.of(items))
+            }
+        }
+    }
+
+    /**
+     * An object whose properties are loaded from a [Deferred] source when first needed.
+     */
+    private class Pending(val source: Deferred<PropertySet>) : PropertySet() {
+
+        @Volatile var loaded: PropertySet? = null
+
+        val properties: PropertySet
+            get() = loaded ?: source.load().apply { loaded = this }
+
+        override fun size(): Int = if (loaded == null && source is DeferredObject) source.size() else properties.size()
+
+        override fun get(key: String): Basket? =
+                if (loaded == null && source is DeferredObject) source[key] else properties[key]
+
+        override fun get(slotCache: SlotCache): Basket? =
+                if (loaded == null && source is DeferredObject) source[slotCache.key] else properties[slotCache]
+
+        override fun with(key: String, basket: Basket): PropertySet = properties.with(key, basket)
+
+        override fun minus(key: String): PropertySet = properties.minus(key)
+
+        override fun withAll(updates: Map<String, Basket>): PropertySet = properties.withAll(updates)
+
+        override fun mapValues(valueMapper: (Basket) -> Basket): PropertySet = properties.mapValues(valueMapper)
+
+        override fun iterator(): Iterator<ObjectEntry> = properties.iterator()
+    }
+
+    /**
+     * The source of these properties, if they were deferred and have not yet been loaded.
+     */
+    val pendingSource: Deferred<PropertySet>?
+        get() = if (this is Pending && loaded == null) source else null
+
     companion object {
 
+        private const val SHAPED_LIMIT = 32
+
+        @JvmStatic
+        fun deferred(source: Deferred<PropertySet>): PropertySet = Pending(source)
+
         @JvmStatic
         fun of(vararg entries: ObjectEntry): PropertySet = of(Arrays.asList(*entries))
 
         @JvmStatic
-        fun of(entries: Collection<ObjectEntry>): PropertySet {
-            val properties = LinkedHashMap<String, Basket>()
-            for (entry in entries) {
-                properties.put(entry.key, entry.value)
-            }
-            return of(properties)
-        }
+        fun of(entries: Collection<ObjectEntry>): PropertySet =
+                if (entries.size <= SHAPED_LIMIT) Shaped.of(entries)
+                else Hashed.of(entries).let { if (it.size() <= SHAPED_LIMIT) Shaped.of(it.toList()) else it }
 
         @JvmStatic
-        fun of(properties: Map<String, Basket>): PropertySet = PropertySet(TreePVector.from(properties.keys), HashTreePMap.from(properties))
+        fun of(properties: Map<String, Basket>): PropertySet = of(properties.entries.map { ObjectEntry.of(it.key, it.value) })
 
         fun of(properties: Sequence<ObjectEntry>): PropertySet = of(properties.toList())
     }
@@ -0,0 +1,99 @@
+package com.codepoetics.raffia.baskets
+
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.AtomicInteger
+
+/**
+ * A shared descriptor of an object's keys, in insertion order, mapping each key to a slot in a value array. Shapes are
+ * interned through the transitions made by adding and removing keys, so objects built with the same keys in the same
+ * order share the same shape instance.
+ */
+internal class Shape private constructor(private val keys: Array<String>) {
+
+    private val slots: Map<String, Int>? =
+            if (keys.size <= LINEAR_SCAN_LIMIT) null
+            else keys.withIndex().associateTo(HashMap<String, Int>(keys.size * 2)) { it.value to it.index }
+
+    private val additions = ConcurrentHashMap<String, Shape>(4)
+    private val removals = ConcurrentHashMap<String, Shape>(4)
+
+    val size: Int get() = keys.size
+
+    fun keyAt(slot: Int): String = keys[slot]
+
+    fun slotOf(key: String): Int {
+        if (slots != null) {
+            return slots[key] ?: -1
+        }
+
+        for (i in keys.indices) {
+            if (keys[i] === key) return i
+        }
+        for (i in keys.indices) {
+            if (keys[i] == key) return i
+        }
+        return -1
+    }
+
+    /**
+     * The shape reached by appending a key which is not already present in this shape.
+     */
+    fun with(key: String): Shape = additions[key] ?: intern(additions, key, Shape(keys + KeyDictionary.intern(key)))
+
+    /**
+     * The shape reached by removing the key held in the given slot.
+     */
+    fun without(slot: Int): Shape {
+        val key = keys[slot]
+        return removals[key] ?: intern(removals, key, keys.indices
+                .filter { it != slot }
+                .fold(EMPTY) { shape, i -> shape.with(keys[i]) })
+    }
+
+    private fun intern(transitions: ConcurrentHashMap<String, Shape>, key: String, shape: Shape): Shape {
+        if (transitions.size >= MAX_TRANSITIONS || shapeCount.get() >= MAX_SHAPES) {
+            return shape
+        }
+
+        val existing = transitions.putIfAbsent(key, shape)
+        if (existing != null) {
+            return existing
+        }
+        shapeCount.incrementAndGet()
+        return shape
+    }
+
+    override fun toString(): String = keys.joinToString(", ", "Shape(", ")")
+
+    companion object {
+        private const val LINEAR_SCAN_LIMIT = 8
+        private const val MAX_TRANSITIONS = 256
+        private const val MAX_SHAPES = 1 shl 16
+
+        private val shapeCount = AtomicInteger()
+
+        val EMPTY = Shape(arrayOf())
+    }
+}
+
+/**
+ * Caches the slot of a key in the last shape it was looked up in, so that repeated lookups against objects of the same
+ * shape become a single array index.
+ */
+internal class SlotCache(val key: String) {
+
+    private class ShapeSlot(val shape: Shape, val slot: Int)
+
+    @Volatile private var cached: ShapeSlot? = null
+
+    fun slotIn(shape: Shape): Int {
+        val current = cached
+        if (current != null && current.shape === shape) {
+            return current.slot
+        }
+
+        val slot = shape.slotOf(key)
+        cached = ShapeSlot(shape, slot)
+        return slot
+    }
+}
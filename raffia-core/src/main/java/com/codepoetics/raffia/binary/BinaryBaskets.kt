@@ -0,0 +1,57 @@
+package com.codepoetics.raffia.binary
+
+import com.codepoetics.raffia.baskets.Basket
+import java.io.File
+import java.io.RandomAccessFile
+import java.nio.ByteBuffer
+import java.nio.channels.FileChannel
+
+/**
+ * Encodes baskets into a compact binary form, and reads them back as views over a [ByteBuffer] (which may be direct or
+ * memory-mapped). Arrays and objects in a view are read from the buffer only as they are accessed.
+ *
+ * The layout is a header, then every value written after its children, then a dictionary of the keys used by objects:
+ *
+ * - header: the magic number `RAFB`, a version byte, the offset of the key dictionary and the offset of the root value
+ * - scalars: a tag byte, followed by a fixed-width or length-prefixed payload
+ * - arrays: a tag byte, an item count and a table of item offsets
+ * - objects: a tag byte, an entry count, a table of (key id, value offset) pairs in insertion order, and a table of
+ *   entry indices in key id order, which keyed lookups binary search
+ * - key dictionary: a key count, followed by each key as length-prefixed UTF-8
+ *
+ * Offsets are 32-bit, as are the indices of a [ByteBuffer], so an encoded basket can be at most 2 GB. A larger data set
+ * must be split across several encoded baskets.
+ */
+object BinaryBaskets {
+
+    @JvmStatic
+    fun encode(basket: Basket): ByteBuffer = BinaryEncoder().encode(basket)
+
+    @JvmStatic
+    fun encodeDirect(basket: Basket): ByteBuffer {
+        val encoded = encode(basket)
+        val direct = ByteBuffer.allocateDirect(encoded.remaining())
+        direct.put(encoded)
+        direct.flip()
+        return direct
+    }
+
+    @JvmStatic
+    fun view(buffer: ByteBuffer): Basket = BinaryView(buffer.slice()).root()
+
+    @JvmStatic
+    fun write(basket: Basket, file: File) {
+        RandomAccessFile(file, "rw").use { output ->
+            output.setLength(0)
+            output.channel.write(encode(basket))
+        }
+    }
+
+    @JvmStatic
+    fun map(file: File): Basket = RandomAccessFile(file, "r").use { input ->
+        if (input.length() > Int.MAX_VALUE) {
+            throw IllegalArgumentException("Encoded basket $file is larger than the 2 GB limit")
+        }
+        view(input.channel.map(FileChannel.MapMode.READ_ONLY, 0, input.length()))
+    }
+}
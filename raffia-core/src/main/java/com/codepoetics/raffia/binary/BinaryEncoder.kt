@@ -0,0 +1,136 @@
+package com.codepoetics.raffia.binary
+
+import com.codepoetics.raffia.baskets.Basket
+import com.codepoetics.raffia.baskets.BasketType
+import com.codepoetics.raffia.binary.BinaryFormat.ARRAY
+import com.codepoetics.raffia.binary.BinaryFormat.DECIMAL
+import com.codepoetics.raffia.binary.BinaryFormat.DOUBLE
+import com.codepoetics.raffia.binary.BinaryFormat.FALSE
+import com.codepoetics.raffia.binary.BinaryFormat.INT
+import com.codepoetics.raffia.binary.BinaryFormat.LONG
+import com.codepoetics.raffia.binary.BinaryFormat.NULL
+import com.codepoetics.raffia.binary.BinaryFormat.OBJECT
+import com.codepoetics.raffia.binary.BinaryFormat.STRING
+import com.codepoetics.raffia.binary.BinaryFormat.TRUE
+import java.nio.ByteBuffer
+import java.nio.ByteOrder
+
+internal class BinaryEncoder {
+
+    private var buffer = ByteBuffer.allocate(1024).order(ByteOrder.BIG_ENDIAN)
+    private val keyIds = LinkedHashMap<String, Int>()
+
+    fun encode(basket: Basket): ByteBuffer {
+        buffer.position(BinaryFormat.HEADER_SIZE)
+        val rootOffset = write(basket)
+        val keysOffset = writeKeys()
+
+        buffer.putInt(0, BinaryFormat.MAGIC)
+        buffer.put(4, BinaryFormat.VERSION)
+        buffer.putInt(5, keysOffset)
+        buffer.putInt(9, rootOffset)
+
+        buffer.flip()
+        return buffer
+    }
+
+    private fun ensure(bytes: Int) {
+        if (buffer.remaining() >= bytes) return
+
+        var capacity = buffer.capacity() * 2
+        while (capacity - buffer.position() < bytes) capacity *= 2
+        val grown = ByteBuffer.allocate(capacity)
+        buffer.flip()
+        grown.put(buffer)
+        buffer = grown
+    }
+
+    private fun write(basket: Basket): Int = when (basket.getType()) {
+        BasketType.NULL -> tag(NULL)
+        BasketType.BOOLEAN -> tag(if (basket.asBoolean()) TRUE else FALSE)
+        BasketType.STRING -> writeString(basket.asString())
+        BasketType.NUMBER -> writeNumber(basket as Basket.NumberBasket)
+        BasketType.ARRAY -> writeArray(basket)
+        BasketType.OBJECT -> writeObject(basket)
+    }
+
+    private fun tag(tag: Byte): Int {
+        ensure(1)
+        val offset = buffer.position()
+        buffer.put(tag)
+        return offset
+    }
+
+    private fun writeString(value: String): Int {
+        val bytes = value.toByteArray(BinaryFormat.UTF_8)
+        ensure(5 + bytes.size)
+        val offset = buffer.position()
+        buffer.put(STRING).putInt(bytes.size).put(bytes)
+        return offset
+    }
+
+    private fun writeNumber(basket: Basket.NumberBasket): Int = when (basket) {
+        is Basket.NumberBasket.LongNumber -> {
+            ensure(9)
+            val offset = buffer.position()
+            val value = basket.longValue
+            if (value >= Int.MIN_VALUE && value <= Int.MAX_VALUE) buffer.put(INT).putInt(value.toInt())
+            else buffer.put(LONG).putLong(value)
+            offset
+        }
+        is Basket.NumberBasket.DoubleNumber -> {
+            ensure(9)
+            val offset = buffer.position()
+            buffer.put(DOUBLE).putDouble(basket.doubleValue)
+            offset
+        }
+        is Basket.NumberBasket.DecimalNumber -> {
+            val value = basket.numberValue
+            val unscaled = value.unscaledValue().toByteArray()
+            ensure(9 + unscaled.size)
+            val offset = buffer.position()
+            buffer.put(DECIMAL).putInt(value.scale()).putInt(unscaled.size).put(unscaled)
+            offset
+        }
+    }
+
+    private fun writeArray(basket: Basket): Int {
+        val items = basket.asArray()
+        val offsets = IntArray(items.size())
+        items.forEachIndexed { index, item -> offsets[index] = write(item) }
+
+        ensure(5 + 4 * offsets.size)
+        val offset = buffer.position()
+        buffer.put(ARRAY).putInt(offsets.size)
+        offsets.forEach { buffer.putInt(it) }
+        return offset
+    }
+
+    private fun writeObject(basket: Basket): Int {
+        val properties = basket.asObject()
+        val keys = IntArray(properties.size())
+        val offsets = IntArray(properties.size())
+        properties.forEachIndexed { index, (key, value) ->
+            keys[index] = keyIds.getOrPut(key) { keyIds.size }
+            offsets[index] = write(value)
+        }
+
+        ensure(5 + 12 * offsets.size)
+        val offset = buffer.position()
+        buffer.put(OBJECT).putInt(offsets.size)
+        for (i in offsets.indices) {
+            buffer.putInt(keys[i]).putInt(offsets[i])
+        }
+        offsets.indices.sortedBy { keys[it] }.forEach { buffer.putInt(it) }
+        return offset
+    }
+
+    private fun writeKeys(): Int {
+        val encoded = keyIds.keys.map { it.toByteArray(BinaryFormat.UTF_8) }
+        ensure(4 + encoded.sumBy { 4 + it.size })
+        val offset = buffer.position()
+        buffer.putInt(encoded.size)
+        encoded.forEach { buffer.putInt(it.size).put(it) }
+        return offset
+    }
+}
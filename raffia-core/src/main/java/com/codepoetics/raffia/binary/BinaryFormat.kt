@@ -0,0 +1,22 @@
+package com.codepoetics.raffia.binary
+
+import java.nio.charset.Charset
+
+internal object BinaryFormat {
+    const val MAGIC = 0x52414642 // "RAFB"
+    const val VERSION: Byte = 2
+    const val HEADER_SIZE = 13
+
+    const val NULL: Byte = 0
+    const val FALSE: Byte = 1
+    const val TRUE: Byte = 2
+    const val INT: Byte = 3
+    const val LONG: Byte = 4
+    const val DOUBLE: Byte = 5
+    const val DECIMAL: Byte = 6
+    const val STRING: Byte = 7
+    const val ARRAY: Byte = 8
+    const val OBJECT: Byte = 9
+
+    val UTF_8: Charset = Charset.forName("UTF-8")
+}
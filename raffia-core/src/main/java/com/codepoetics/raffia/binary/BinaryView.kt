@@ -0,0 +1,156 @@
+package com.codepoetics.raffia.binary
+
+import com.codepoetics.raffia.baskets.ArrayContents
+import com.codepoetics.raffia.baskets.Basket
+import com.codepoetics.raffia.baskets.DeferredArray
+import com.codepoetics.raffia.baskets.DeferredObject
+import com.codepoetics.raffia.baskets.KeyDictionary
+import com.codepoetics.raffia.baskets.ObjectEntry
+import com.codepoetics.raffia.baskets.PropertySet
+import com.codepoetics.raffia.binary.BinaryFormat.ARRAY
+import com.codepoetics.raffia.binary.BinaryFormat.DECIMAL
+import com.codepoetics.raffia.binary.BinaryFormat.DOUBLE
+import com.codepoetics.raffia.binary.BinaryFormat.FALSE
+import com.codepoetics.raffia.binary.BinaryFormat.INT
+import com.codepoetics.raffia.binary.BinaryFormat.LONG
+import com.codepoetics.raffia.binary.BinaryFormat.NULL
+import com.codepoetics.raffia.binary.BinaryFormat.OBJECT
+import com.codepoetics.raffia.binary.BinaryFormat.STRING
+import com.codepoetics.raffia.binary.BinaryFormat.TRUE
+import java.math.BigDecimal
+import java.math.BigInteger
+import java.nio.ByteBuffer
+
+/**
+ * Reads baskets directly out of an encoded buffer. Only the key dictionary is copied onto the heap; containers are
+ * deferred, and answer keyed and indexed lookups straight from their offset tables. Each container remembers the values
+ * it has decoded, so that repeated access does not decode them again.
+ */
+internal class BinaryView(private val buffer: ByteBuffer) {
+
+    private val keys: Array<String>
+    private val keyIds: Map<String, Int>
+    private val rootOffset: Int
+
+    init {
+        if (buffer.remaining() < BinaryFormat.HEADER_SIZE || buffer.getInt(0) != BinaryFormat.MAGIC) {
+            throw IllegalArgumentException("Buffer does not contain an encoded basket")
+        }
+        if (buffer.get(4) != BinaryFormat.VERSION) {
+            throw IllegalArgumentException("Unsupported encoded basket version ${buffer.get(4)}")
+        }
+
+        var offset = buffer.getInt(5)
+        val keyCount = buffer.getInt(offset)
+        offset += 4
+        keys = Array(keyCount) {
+            val length = buffer.getInt(offset)
+            val key = KeyDictionary.intern(readUtf8(offset + 4, length))
+            offset += 4 + length
+            key
+        }
+        keyIds = keys.withIndex().associateTo(HashMap<String, Int>(keyCount * 2)) { it.value to it.index }
+        rootOffset = buffer.getInt(9)
+    }
+
+    private val root: Basket by lazy { read(rootOffset) }
+
+    fun root(): Basket = root
+
+    private fun readUtf8(offset: Int, length: Int): String {
+        if (buffer.hasArray()) {
+            return String(buffer.array(), buffer.arrayOffset() + offset, length, BinaryFormat.UTF_8)
+        }
+        val bytes = ByteArray(length)
+        for (i in 0 until length) {
+            bytes[i] = buffer.get(offset + i)
+        }
+        return String(bytes, BinaryFormat.UTF_8)
+    }
+
+    private fun read(offset: Int): Basket {
+        val tag = buffer.get(offset)
+        return when (tag) {
+            NULL -> Basket.ofNull()
+            FALSE -> Basket.ofBoolean(false)
+            TRUE -> Basket.ofBoolean(true)
+            INT -> Basket.ofNumber(buffer.getInt(offset + 1).toLong())
+            LONG -> Basket.ofNumber(buffer.getLong(offset + 1))
+            DOUBLE -> Basket.ofNumber(buffer.getDouble(offset + 1))
+            DECIMAL -> {
+                val length = buffer.getInt(offset + 5)
+                val unscaled = ByteArray(length)
+                for (i in 0 until length) {
+                    unscaled[i] = buffer.get(offset + 9 + i)
+                }
+                Basket.ofNumber(BigDecimal(BigInteger(unscaled), buffer.getInt(offset + 1)))
+            }
+            STRING -> Basket.ofString(readUtf8(offset + 5, buffer.getInt(offset + 1)))
+            ARRAY -> Basket.ofArray(ArrayContents.deferred(EncodedArray(offset)))
+            OBJECT -> Basket.ofObject(PropertySet.deferred(EncodedObject(offset)))
+            else -> throw IllegalStateException("Unrecognised tag $tag at offset $offset")
+        }
+    }
+
+    /**
+     * The values of a container, decoded as they are first read. Baskets are immutable, so a race between readers at
+     * worst decodes a value twice.
+     */
+    private class Decoded(size: Int) {
+        private val values = arrayOfNulls<Basket>(size)
+
+        inline fun get(index: Int, decode: () -> Basket): Basket = values[index] ?: decode().apply { values[index] = this }
+    }
+
+    private inner class EncodedArray(private val offset: Int) : DeferredArray {
+
+        private val size = buffer.getInt(offset + 1)
+        private val decoded = Decoded(size)
+
+        override fun size(): Int = size
+
+        override fun get(index: Int): Basket {
+            if (index < 0 || index >= size) {
+                throw IndexOutOfBoundsException("Index $index out of bounds for array of size $size")
+            }
+            return decoded.get(index) { read(buffer.getInt(offset + 5 + 4 * index)) }
+        }
+
+        override fun load(): ArrayContents = ArrayContents.of((0 until size).map(this::get))
+    }
+
+    private inner class EncodedObject(private val offset: Int) : DeferredObject {
+
+        private val size = buffer.getInt(offset + 1)
+        private val decoded = Decoded(size)
+
+        override fun size(): Int = size
+
+        private fun keyIdAt(index: Int): Int = buffer.getInt(offset + 5 + 8 * index)
+
+        private fun valueAt(index: Int): Basket = decoded.get(index) { read(buffer.getInt(offset + 9 + 8 * index)) }
+
+        private fun indexInKeyOrder(position: Int): Int = buffer.getInt(offset + 5 + 8 * size + 4 * position)
+
+        override fun get(key: String): Basket? {
+            val keyId = keyIds[key] ?: return null
+            var low = 0
+            var high = size - 1
+            while (low <= high) {
+                val middle = (low + high) ushr 1
+                val index = indexInKeyOrder(middle)
+                val found = keyIdAt(index)
+                when {
+                    found < keyId -> low = middle + 1
+                    found > keyId -> high = middle - 1
+                    else -> return valueAt(index)
+                }
+            }
+            return null
+        }
+
+        override fun load(): PropertySet = PropertySet.of((0 until size()).map {
+            ObjectEntry.of(keys[keyIdAt(it)], valueAt(it))
+        })
+    }
+}
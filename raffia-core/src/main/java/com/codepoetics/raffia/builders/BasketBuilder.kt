@@ -119,6 +119,14 @@ class BasketBuilder<T : BasketWriter<T>> protected constructor(val writer: T) :
         return with(writer.add(value))
     }
 
+    override fun add(value: Long): BasketBuilder<T> {
+        return with(writer.add(value))
+    }
+
+    override fun add(value: Double): BasketBuilder<T> {
+        return with(writer.add(value))
+    }
+
     override fun add(value: Boolean): BasketBuilder<T> {
         return with(writer.add(value))
     }
@@ -26,6 +26,10 @@ class BasketWeaver private constructor(private val writer: BasketWeavingWriter)
 
     override fun add(value: BigDecimal): BasketWeaver = with(writer.add(value))
 
+    override fun add(value: Long): BasketWeaver = with(writer.add(value))
+
+    override fun add(value: Double): BasketWeaver = with(writer.add(value))
+
     override fun add(value: Boolean): BasketWeaver = with(writer.add(value))
 
     override fun addNull(): BasketWeaver = with(writer.addNull())
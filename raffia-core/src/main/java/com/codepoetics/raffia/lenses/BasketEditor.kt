@@ -0,0 +1,153 @@
+package com.codepoetics.raffia.lenses
+
+import com.codepoetics.raffia.baskets.Basket
+import java.math.BigDecimal
+
+/**
+ * Edits a basket transiently. Each array or object on an edited path is taken into the editor's ownership the first
+ * time it is touched, and later edits beneath it are recorded in place; when editing completes, each changed container
+ * is copied back into persistent form exactly once.
+ *
+ * Edits through keys, indices and compositions of them are applied in place. Any other strand is applied persistently
+ * from the point on its path where it stops being one of those.
+ */
+class BasketEditor private constructor(basket: Basket) {
+
+    private var root: Any = basket
+    private var completed = false
+
+    fun update(strand: Strand, updater: (Basket) -> Basket): BasketEditor {
+        checkNotCompleted()
+        root = updateIn(root, strand.steps(), 0, updater)
+        return this
+    }
+
+    fun set(strand: Strand, newValue: Basket): BasketEditor = update(strand) { newValue }
+    fun set(strand: Strand, newValue: String): BasketEditor = set(strand, Basket.ofString(newValue))
+    fun set(strand: Strand, newValue: BigDecimal): BasketEditor = set(strand, Basket.ofNumber(newValue))
+    fun set(strand: Strand, newValue: Boolean): BasketEditor = set(strand, Basket.ofBoolean(newValue))
+
+    /**
+     * The basket as it stands with the edits made so far.
+     */
+    fun current(): Basket {
+        checkNotCompleted()
+        return persistent(root)
+    }
+
+    private fun complete(): Basket {
+        val result = current()
+        completed = true
+        return result
+    }
+
+    private fun checkNotCompleted() {
+        if (completed) {
+            throw IllegalStateException("Cannot use a basket editor after editing has completed")
+        }
+    }
+
+    private fun updateIn(node: Any, steps: List<Strand>, index: Int, updater: (Basket) -> Basket): Any {
+        if (index == steps.size) {
+            val current = persistent(node)
+            val updated = updater(current)
+            return if (updated === current) node else updated
+        }
+
+        val step = steps[index]
+        return when (step) {
+            is KeyStrand -> {
+                val target = owned(node) as? TransientObject ?: return node
+                for (key in step.keys) {
+                    val child = target[key] ?: continue
+                    target[key] = updateIn(child, steps, index + 1, updater)
+                }
+                target
+            }
+            is IndexStrand -> {
+                val target = owned(node) as? TransientArray ?: return node
+                for (i in step.indices) {
+                    val actual = if (i < 0) target.size + i else i
+                    if (actual < 0 || actual >= target.size) continue
+                    target[actual] = updateIn(target[actual], steps, index + 1, updater)
+                }
+                target
+            }
+            else -> {
+                val current = persistent(node)
+                val updated = composed(steps.subList(index, steps.size)).update(current, updater)
+                if (updated === current) node else updated
+            }
+        }
+    }
+
+    private fun owned(node: Any): Any? = when (node) {
+        is Transient -> node
+        is Basket.ObjectBasket -> TransientObject(node)
+        is Basket.ArrayBasket -> TransientArray(node)
+        else -> null
+    }
+
+    private abstract class Transient {
+        abstract fun toBasket(): Basket
+    }
+
+    /**
+     * An object owned by the editor, recording replaced values over the original's properties.
+     */
+    private class TransientObject(val original: Basket.ObjectBasket) : Transient() {
+        private val changes = LinkedHashMap<String, Any>()
+
+        operator fun get(key: String): Any? = changes[key] ?: original.properties[key]
+
+        operator fun set(key: String, value: Any) {
+            changes[key] = value
+        }
+
+        override fun toBasket(): Basket {
+            val updates = LinkedHashMap<String, Basket>()
+            for ((key, value) in changes) {
+                val basket = persistent(value)
+                if (basket !== original.properties[key]) updates[key] = basket
+            }
+            return if (updates.isEmpty()) original else Basket.ofObject(original.properties.withAll(updates))
+        }
+    }
+
+    /**
+     * An array owned by the editor, recording replaced items over the original's contents.
+     */
+    private class TransientArray(val original: Basket.ArrayBasket) : Transient() {
+        private val changes = HashMap<Int, Any>()
+
+        val size: Int = original.contents.size()
+
+        operator fun get(index: Int): Any = changes[index] ?: original.contents[index]
+
+        operator fun set(index: Int, value: Any) {
+            changes[index] = value
+        }
+
+        override fun toBasket(): Basket {
+            val updates = HashMap<Int, Basket>()
+            for ((index, value) in changes) {
+                val basket = persistent(value)
+                if (basket !== original.contents[index]) updates[index] = basket
+            }
+            return if (updates.isEmpty()) original else Basket.ofArray(original.contents.withAll(updates))
+        }
+    }
+
+    companion object {
+
+        @JvmStatic
+        fun edit(basket: Basket, edits: BasketEditor.() -> Unit): Basket = BasketEditor(basket).apply(edits).complete()
+
+        private fun persistent(node: Any): Basket = if (node is Transient) node.toBasket() else node as Basket
+    }
+}
+
+/**
+ * Applies a batch of edits to this basket in a single transient session, returning the edited basket.
+ */
+fun Basket.edit(edits: BasketEditor.() -> Unit): Basket = BasketEditor.edit(this, edits)
@@ -0,0 +1,126 @@
+package com.codepoetics.raffia.lenses
+
+import com.codepoetics.raffia.baskets.Basket
+import java.math.BigDecimal
+
+/**
+ * Applies many strand updates in a single traversal. The strands are merged into a trie of key and index steps, so that
+ * each container on a shared prefix is visited, and copied, only once however many updates pass through it.
+ *
+ * The result is the same as applying the updates one after another in the order they were added: updates are only
+ * merged where doing so cannot change which values they see.
+ */
+class BatchUpdate private constructor(private val updates: List<Pair<List<Strand>, (Basket) -> Basket>>) {
+
+    fun update(strand: Strand, updater: (Basket) -> Basket): BatchUpdate =
+            BatchUpdate(updates + (strand.steps() to updater))
+
+    fun set(strand: Strand, newValue: Basket): BatchUpdate = update(strand) { newValue }
+    fun set(strand: Strand, newValue: String): BatchUpdate = set(strand, Basket.ofString(newValue))
+    fun set(strand: Strand, newValue: BigDecimal): BatchUpdate = set(strand, Basket.ofNumber(newValue))
+    fun set(strand: Strand, newValue: Boolean): BatchUpdate = set(strand, Basket.ofBoolean(newValue))
+
+    private val root: Node by lazy {
+        val root = Node()
+        updates.forEach { (steps, updater) -> root.add(steps, 0, updater) }
+        root
+    }
+
+    fun apply(basket: Basket): Basket = root.apply(basket)
+
+    private sealed class Action {
+        class Descend(val step: Strand, val node: Node) : Action()
+        class Update(val strand: Strand, val updater: (Basket) -> Basket) : Action()
+    }
+
+    private class Node {
+        private val actions = ArrayList<Action>()
+
+        fun add(steps: List<Strand>, index: Int, updater: (Basket) -> Basket) {
+            val step = if (index < steps.size) steps[index] else null
+            if (step !is KeyStrand && step !is IndexStrand) {
+                actions.add(Action.Update(composed(steps.subList(index, steps.size)), updater))
+                return
+            }
+
+            val child = mergeableDescent(step) ?: Node().also { actions.add(Action.Descend(step, it)) }
+            child.add(steps, index + 1, updater)
+        }
+
+        /**
+         * An existing descent through the same step, provided no later action could touch the same values.
+         */
+        private fun mergeableDescent(step: Strand): Node? {
+            for (i in actions.indices.reversed()) {
+                val action = actions[i]
+                if (action !is Action.Descend) return null
+                if (action.step == step) return action.node
+                if (!disjoint(action.step, step)) return null
+            }
+            return null
+        }
+
+        fun apply(basket: Basket): Basket {
+            var current = basket
+            var objectChanges: MutableMap<String, Basket>? = null
+            var arrayChanges: MutableMap<Int, Basket>? = null
+
+            for (action in actions) {
+                when (action) {
+                    is Action.Update -> {
+                        current = withChanges(current, objectChanges, arrayChanges)
+                        objectChanges = null
+                        arrayChanges = null
+                        current = action.strand.update(current, action.updater)
+                    }
+                    is Action.Descend -> {
+                        val step = action.step
+                        if (step is KeyStrand && current is Basket.ObjectBasket) {
+                            for (key in step.keys) {
+                                val value = objectChanges?.get(key) ?: current.properties[key] ?: continue
+                                val updated = action.node.apply(value)
+                                if (updated !== value) {
+                                    objectChanges = (objectChanges ?: LinkedHashMap<String, Basket>()).apply { put(key, updated) }
+                                }
+                            }
+                        } else if (step is IndexStrand && current is Basket.ArrayBasket) {
+                            val size = current.contents.size()
+                            for (i in step.indices) {
+                                val actual = if (i < 0) size + i else i
+                                if (actual < 0 || actual >= size) continue
+                                val value = arrayChanges?.get(actual) ?: current.contents[actual]
+                                val updated = action.node.apply(value)
+                                if (updated !== value) {
+                                    arrayChanges = (arrayChanges ?: HashMap<Int, Basket>()).apply { put(actual, updated) }
+                                }
+                            }
+                        }
+                    }
+                }
+            }
+
+            return withChanges(current, objectChanges, arrayChanges)
+        }
+
+        private fun withChanges(basket: Basket, objectChanges: Map<String, Basket>?, arrayChanges: Map<Int, Basket>?): Basket =
+                when {
+                    objectChanges != null -> Basket.ofObject(basket.asObject().withAll(objectChanges))
+                    arrayChanges != null -> Basket.ofArray(basket.asArray().withAll(arrayChanges))
+                    else -> basket
+                }
+
+        private fun disjoint(a: Strand, b: Strand): Boolean = when {
+            a is KeyStrand && b is KeyStrand -> a.keys.none { it in b.keys }
+            a is IndexStrand && b is IndexStrand ->
+                a.indices.all { it >= 0 } && b.indices.all { it >= 0 } && a.indices.none { it in b.indices }
+            else -> true
+        }
+    }
+
+    companion object {
+        private val EMPTY = BatchUpdate(emptyList())
+
+        @JvmStatic
+        fun empty(): BatchUpdate = EMPTY
+    }
+}
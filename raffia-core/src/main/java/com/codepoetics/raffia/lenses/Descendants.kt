@@ -0,0 +1,137 @@
+package com.codepoetics.raffia.lenses
+
+import com.codepoetics.raffia.baskets.ArrayContents
+import com.codepoetics.raffia.baskets.Basket
+import com.codepoetics.raffia.baskets.KeySummaries
+import com.codepoetics.raffia.baskets.ObjectEntry
+import java.util.*
+
+/**
+ * Updates through descendants, walking the tree with an explicit stack of containers rather than by recursion, so that
+ * deeply nested baskets cannot overflow the call stack. A container is rebuilt only if something beneath it changed.
+ *
+ * Depths are counted from the basket the walk starts at, whose own values and items are at depth 1.
+ */
+internal object Descendants {
+
+    const val UNBOUNDED = Int.MAX_VALUE
+
+    /**
+     * A container being walked, with the changes made to its values so far.
+     */
+    private class Frame(val basket: Basket, val depth: Int, val keyInParent: String?, val indexInParent: Int) {
+        private val entries: Iterator<ObjectEntry>? = (basket as? Basket.ObjectBasket)?.properties?.iterator()
+        private val items: ArrayContents? = (basket as? Basket.ArrayBasket)?.contents
+        private var objectChanges: MutableMap<String, Basket>? = null
+        private var arrayChanges: MutableMap<Int, Basket>? = null
+
+        var key: String? = null
+        var index = -1
+
+        /**
+         * Moves to the next value, setting [key] or [index], or returns null if there are none left.
+         */
+        fun next(): Basket? {
+            if (entries != null) {
+                if (!entries.hasNext()) return null
+                val entry = entries.next()
+                key = entry.key
+                return entry.value
+            }
+            if (items == null || index + 1 >= items.size()) return null
+            return items[++index]
+        }
+
+        fun record(key: String?, index: Int, value: Basket) {
+            if (key != null) {
+                (objectChanges ?: LinkedHashMap<String, Basket>().apply { objectChanges = this })[key] = value
+            } else {
+                (arrayChanges ?: HashMap<Int, Basket>().apply { arrayChanges = this })[index] = value
+            }
+        }
+
+        fun replaceCurrent(value: Basket) = record(key, index, value)
+
+        fun rebuilt(): Basket {
+            val objectChanges = objectChanges
+            val arrayChanges = arrayChanges
+            return when {
+                objectChanges != null -> Basket.ofObject(basket.asObject().withAll(objectChanges))
+                arrayChanges != null -> Basket.ofArray(basket.asArray().withAll(arrayChanges))
+                else -> basket
+            }
+        }
+    }
+
+    private fun isContainer(basket: Basket) = basket is Basket.ObjectBasket || basket is Basket.ArrayBasket
+
+    private fun mayContain(basket: Basket, keyBits: Long) =
+            isContainer(basket) && (keyBits == 0L || KeySummaries.mayContain(basket, keyBits))
+
+    /**
+     * Updates the value of every property with the given key, at any depth up to [maxDepth], without looking inside
+     * the values updated. Unless [keyBits] is zero, containers whose key summaries rule out the key are passed over.
+     */
+    fun updateKey(basket: Basket, key: String, maxDepth: Int, keyBits: Long, updater: (Basket) -> Basket): Basket {
+        if (!mayContain(basket, keyBits) || maxDepth < 1) {
+            return basket
+        }
+
+        val stack = ArrayDeque<Frame>()
+        stack.push(Frame(basket, 0, null, -1))
+        while (true) {
+            val frame = stack.peek()
+            val value = frame.next()
+            if (value != null) {
+                if (frame.key == key) {
+                    val updated = updater(value)
+                    if (updated !== value) frame.replaceCurrent(updated)
+                } else if (frame.depth + 1 < maxDepth && mayContain(value, keyBits)) {
+                    stack.push(Frame(value, frame.depth + 1, frame.key, frame.index))
+                }
+                continue
+            }
+
+            stack.pop()
+            val rebuilt = frame.rebuilt()
+            val parent = stack.peek() ?: return rebuilt
+            if (rebuilt !== frame.basket) parent.record(frame.keyInParent, frame.indexInParent, rebuilt)
+        }
+    }
+
+    /**
+     * Updates every item of an array, and of the arrays nested within it up to [maxDepth], after first updating
+     * beneath it; the values of objects reached are updated, but not those nested within them.
+     */
+    fun updateAll(basket: Basket, maxDepth: Int, updater: (Basket) -> Basket): Basket = when {
+        maxDepth < 1 -> if (isContainer(basket)) basket else updater(basket)
+        basket is Basket.ObjectBasket -> basket.withProperties(basket.properties.mapValues(updater))
+        basket is Basket.ArrayBasket -> updateArrays(basket, maxDepth, updater)
+        else -> updater(basket)
+    }
+
+    private fun updateArrays(basket: Basket, maxDepth: Int, updater: (Basket) -> Basket): Basket {
+        val stack = ArrayDeque<Frame>()
+        stack.push(Frame(basket, 0, null, -1))
+        while (true) {
+            val frame = stack.peek()
+            val value = frame.next()
+            if (value != null) {
+                val depth = frame.depth + 1
+                if (value is Basket.ArrayBasket && depth < maxDepth) {
+                    stack.push(Frame(value, depth, null, frame.index))
+                    continue
+                }
+                val updated = updater(if (depth < maxDepth) updateAll(value, 1, updater) else value)
+                if (updated !== value) frame.replaceCurrent(updated)
+                continue
+            }
+
+            stack.pop()
+            val rebuilt = frame.rebuilt()
+            val parent = stack.peek() ?: return rebuilt
+            val updated = updater(rebuilt)
+            if (updated !== frame.basket) parent.record(null, frame.indexInParent, updated)
+        }
+    }
+}
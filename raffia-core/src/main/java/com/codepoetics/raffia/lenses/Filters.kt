@@ -0,0 +1,329 @@
+package com.codepoetics.raffia.lenses
+
+import com.codepoetics.raffia.baskets.Basket
+import com.codepoetics.raffia.baskets.SlotCache
+import com.codepoetics.raffia.predicates.NumberComparison
+import java.math.BigDecimal
+
+/**
+ * A predicate compiled from a JsonPath filter expression such as `@.price < 10 && @.category == 'fiction'`. Filters
+ * keep their structure, so that they can be inspected, and estimate their own cost; the operands of `&&` and `||` are
+ * evaluated cheapest first.
+ */
+internal sealed class Filter : (Basket) -> Boolean {
+
+    /**
+     * A rough estimate of the work done by one evaluation, counted in property and item lookups.
+     */
+    abstract val cost: Int
+
+    class And(operands: List<Filter>) : Filter() {
+        val operands = operands.sortedBy(Filter::cost)
+        override val cost = operands.sumBy(Filter::cost)
+        override fun invoke(basket: Basket): Boolean = operands.all { it(basket) }
+        override fun toString() = operands.joinToString(" && ") { if (it is Or) "($it)" else it.toString() }
+    }
+
+    class Or(operands: List<Filter>) : Filter() {
+        val operands = operands.sortedBy(Filter::cost)
+        override val cost = operands.sumBy(Filter::cost)
+        override fun invoke(basket: Basket): Boolean = operands.any { it(basket) }
+        override fun toString() = operands.joinToString(" || ")
+    }
+
+    class Not(val operand: Filter) : Filter() {
+        override val cost = operand.cost
+        override fun invoke(basket: Basket): Boolean = !operand(basket)
+        override fun toString() = if (operand is And || operand is Or) "!($operand)" else "!$operand"
+    }
+
+    class Exists(val accessor: Accessor) : Filter() {
+        override val cost = accessor.cost
+        override fun invoke(basket: Basket): Boolean = accessor.resolve(basket) != null
+        override fun toString() = accessor.toString()
+    }
+
+    /**
+     * Compares a value within the tested basket against a constant number, without converting either to [BigDecimal].
+     */
+    class NumberTest(val accessor: Accessor, private val comparison: NumberComparison, private val negated: Boolean,
+                     private val source: String) : Filter() {
+        override val cost = accessor.cost
+        override fun invoke(basket: Basket): Boolean {
+            val value = accessor.resolve(basket) as? Basket.NumberBasket ?: return false
+            return comparison.test(value) != negated
+        }
+        override fun toString() = source
+    }
+
+    class StringEquals(val accessor: Accessor, private val expected: String, private val negated: Boolean) : Filter() {
+        override val cost = accessor.cost
+        override fun invoke(basket: Basket): Boolean {
+            val value = accessor.resolve(basket) as? Basket.StringBasket ?: return false
+            return (value.stringValue == expected) != negated
+        }
+        override fun toString() = "$accessor ${if (negated) "!=" else "=="} '$expected'"
+    }
+
+    class Comparison(val left: Operand, val operator: String, val right: Operand) : Filter() {
+        override val cost = left.cost + right.cost + 1
+        override fun invoke(basket: Basket): Boolean {
+            val l = left.resolve(basket) ?: return false
+            val r = right.resolve(basket) ?: return false
+            return when (operator) {
+                "==" -> l == r
+                "!=" -> l != r
+                else -> {
+                    val order = when {
+                        l is Basket.NumberBasket && r is Basket.NumberBasket -> l.compareTo(r)
+                        l is Basket.StringBasket && r is Basket.StringBasket -> l.stringValue.compareTo(r.stringValue)
+                        else -> return false
+                    }
+                    when (operator) {
+                        "<" -> order < 0
+                        "<=" -> order <= 0
+                        ">" -> order > 0
+                        else -> order >= 0
+                    }
+                }
+            }
+        }
+        override fun toString() = "$left $operator $right"
+    }
+}
+
+internal sealed class Operand {
+    abstract val cost: Int
+    abstract fun resolve(basket: Basket): Basket?
+}
+
+internal class Constant(val value: Basket) : Operand() {
+    override val cost = 0
+    override fun resolve(basket: Basket): Basket? = value
+    override fun toString() = when (value) {
+        is Basket.StringBasket -> "'${value.stringValue}'"
+        is Basket.NumberBasket -> value.numberValue.toPlainString()
+        is Basket.NullBasket -> "null"
+        else -> value.asBoolean().toString()
+    }
+}
+
+/**
+ * A path of keys and indices relative to the tested basket, such as `@.book[0].title`.
+ */
+internal class Accessor(private val steps: List<Any>) : Operand() {
+    private val resolvedSteps: Array<Any> = steps.map { if (it is String) SlotCache(it) else it }.toTypedArray()
+
+    override val cost = steps.size
+
+    override fun resolve(basket: Basket): Basket? {
+        var current = basket
+        for (step in resolvedSteps) {
+            current = when (current) {
+                is Basket.ObjectBasket -> if (step is SlotCache) current.properties[step] else null
+                is Basket.ArrayBasket -> if (step is Int) item(current, step) else null
+                else -> null
+            } ?: return null
+        }
+        return current
+    }
+
+    private fun item(array: Basket.ArrayBasket, index: Int): Basket? {
+        val size = array.contents.size()
+        val actual = if (index < 0) size + index else index
+        return if (actual < 0 || actual >= size) null else array.contents[actual]
+    }
+
+    override fun toString() = steps.joinToString("", "@") { if (it is String) ".$it" else "[$it]" }
+}
+
+/**
+ * Parses the expression within `[?(...)]` into a [Filter], by recursive descent.
+ */
+internal class FilterParser private constructor(private val expression: String) {
+
+    private var position = 0
+
+    private fun parse(): Filter {
+        val filter = parseOr()
+        skipWhitespace()
+        if (position < expression.length) {
+            unexpected()
+        }
+        return filter
+    }
+
+    private fun parseOr(): Filter {
+        val operands = arrayListOf(parseAnd())
+        while (consume("||")) {
+            operands.add(parseAnd())
+        }
+        return if (operands.size == 1) operands[0] else Filter.Or(operands)
+    }
+
+    private fun parseAnd(): Filter {
+        val operands = arrayListOf(parseUnary())
+        while (consume("&&")) {
+            operands.add(parseUnary())
+        }
+        return if (operands.size == 1) operands[0] else Filter.And(operands)
+    }
+
+    private fun parseUnary(): Filter {
+        if (consume("!")) {
+            return Filter.Not(parseUnary())
+        }
+        if (consume("(")) {
+            val filter = parseOr()
+            expect(")")
+            return filter
+        }
+        return parseComparison()
+    }
+
+    private fun parseComparison(): Filter {
+        val left = parseOperand()
+        val operator = COMPARISON_OPERATORS.firstOrNull { consume(it) }
+        if (operator == null) {
+            return if (left is Accessor) Filter.Exists(left) else unexpected()
+        }
+        return compile(left, operator, parseOperand())
+    }
+
+    private fun compile(left: Operand, operator: String, right: Operand): Filter {
+        if (left is Constant && right is Accessor) {
+            return compile(right, FLIPPED[operator]!!, left)
+        }
+        if (left is Accessor && right is Constant) {
+            val value = right.value
+            if (value is Basket.NumberBasket) {
+                val comparison = NUMBER_COMPARISONS[operator]!!
+                return Filter.NumberTest(left, NumberComparison(value, comparison), operator == "!=", "$left $operator $right")
+            }
+            if (value is Basket.StringBasket && (operator == "==" || operator == "!=")) {
+                return Filter.StringEquals(left, value.stringValue, operator == "!=")
+            }
+        }
+        return Filter.Comparison(left, operator, right)
+    }
+
+    private fun parseOperand(): Operand {
+        skipWhitespace()
+        if (position >= expression.length) {
+            unexpected()
+        }
+
+        val c = expression[position]
+        return when {
+            c == '@' -> {
+                position++
+                parseAccessor()
+            }
+            c == '\'' || c == '"' -> Constant(Basket.ofString(parseQuoted()))
+            c == '-' || c in '0'..'9' -> Constant(parseNumber())
+            consumeWord("true") -> Constant(Basket.ofBoolean(true))
+            consumeWord("false") -> Constant(Basket.ofBoolean(false))
+            consumeWord("null") -> Constant(Basket.ofNull())
+            else -> unexpected()
+        }
+    }
+
+    private fun parseAccessor(): Accessor {
+        val steps = ArrayList<Any>()
+        while (position < expression.length) {
+            val c = expression[position]
+            if (c == '.') {
+                position++
+                val start = position
+                while (position < expression.length && isKeyCharacter(expression[position])) {
+                    position++
+                }
+                if (position == start) unexpected()
+                steps.add(expression.substring(start, position))
+            } else if (c == '[') {
+                position++
+                skipWhitespace()
+                if (position < expression.length && (expression[position] == '\'' || expression[position] == '"')) {
+                    steps.add(parseQuoted())
+                } else {
+                    steps.add(parseNumber().asNumber().intValueExact())
+                }
+                expect("]")
+            } else {
+                break
+            }
+        }
+        return Accessor(steps)
+    }
+
+    private fun parseQuoted(): String {
+        val quote = expression[position]
+        val end = expression.indexOf(quote, position + 1)
+        if (end < 0) unexpected()
+        val value = expression.substring(position + 1, end)
+        position = end + 1
+        return value
+    }
+
+    private fun parseNumber(): Basket {
+        val start = position
+        if (expression[position] == '-') position++
+        while (position < expression.length && (expression[position] in '0'..'9' || expression[position] in ".eE+-")) {
+            position++
+        }
+        try {
+            return Basket.NumberBasket.of(BigDecimal(expression.substring(start, position)))
+        } catch (e: NumberFormatException) {
+            throw IllegalArgumentException("Invalid number in filter expression: " + expression.substring(start, position))
+        }
+    }
+
+    private fun skipWhitespace() {
+        while (position < expression.length && expression[position].isWhitespace()) {
+            position++
+        }
+    }
+
+    private fun consume(token: String): Boolean {
+        skipWhitespace()
+        if (expression.startsWith(token, position)) {
+            position += token.length
+            return true
+        }
+        return false
+    }
+
+    private fun consumeWord(word: String): Boolean {
+        val end = position + word.length
+        if (expression.startsWith(word, position) && (end == expression.length || !isKeyCharacter(expression[end]))) {
+            position = end
+            return true
+        }
+        return false
+    }
+
+    private fun expect(token: String) {
+        if (!consume(token)) unexpected()
+    }
+
+    private fun unexpected(): Nothing =
+            throw IllegalArgumentException("Unrecognised filter expression at position $position: $expression")
+
+    companion object {
+        private val COMPARISON_OPERATORS = listOf("==", "!=", "<=", ">=", "<", ">")
+
+        private val FLIPPED = mapOf("==" to "==", "!=" to "!=", "<" to ">", "<=" to ">=", ">" to "<", ">=" to "<=")
+
+        private val NUMBER_COMPARISONS = mapOf(
+                "==" to NumberComparison.Comparison.EQUAL,
+                "!=" to NumberComparison.Comparison.EQUAL,
+                "<" to NumberComparison.Comparison.LESS,
+                "<=" to NumberComparison.Comparison.LESS_OR_EQUAL,
+                ">" to NumberComparison.Comparison.GREATER,
+                ">=" to NumberComparison.Comparison.GREATER_OR_EQUAL)
+
+        fun parse(expression: String): Filter = FilterParser(expression).parse()
+
+        private fun isKeyCharacter(c: Char): Boolean = PathParser.isKeyCharacter(c)
+    }
+}
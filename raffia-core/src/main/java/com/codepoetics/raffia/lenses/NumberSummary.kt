@@ -0,0 +1,121 @@
+package com.codepoetics.raffia.lenses
+
+import com.codepoetics.raffia.baskets.Basket
+import java.math.BigDecimal
+import java.math.MathContext
+
+/**
+ * Accumulates the count, sum, minimum and maximum of the numbers passed to it, ignoring anything else. Whole numbers are
+ * summed as longs until they overflow, numbers held as doubles are summed as scaled longs where their decimal values fit,
+ * and comparisons are made between baskets' own representations, so that a [BigDecimal] is created only for numbers held
+ * as decimals, or doubles too large or too finely divided to fit.
+ */
+class NumberSummary : BasketSink {
+
+    var count: Int = 0
+        private set
+
+    private var longSum = 0L
+    private var decimalSum: BigDecimal? = null
+    private var doubleSum = 0.0
+    private var scaledSum = 0L
+    private var scale = 0
+    private var least: Basket.NumberBasket? = null
+    private var greatest: Basket.NumberBasket? = null
+
+    override fun accept(basket: Basket): Boolean {
+        if (basket !is Basket.NumberBasket) {
+            return true
+        }
+
+        count++
+        when (basket) {
+            is Basket.NumberBasket.LongNumber -> addLong(basket.longValue)
+            is Basket.NumberBasket.DoubleNumber -> {
+                doubleSum += basket.doubleValue
+                if (!addDouble(basket.doubleValue)) {
+                    decimalSum = (decimalSum ?: BigDecimal.ZERO).add(basket.numberValue)
+                }
+            }
+            else -> decimalSum = (decimalSum ?: BigDecimal.ZERO).add(basket.numberValue)
+        }
+
+        if (least.let { it == null || basket.compareTo(it) < 0 }) least = basket
+        if (greatest.let { it == null || basket.compareTo(it) > 0 }) greatest = basket
+        return true
+    }
+
+    private fun addLong(value: Long) {
+        val total = longSum + value
+        if ((longSum xor total) and (value xor total) < 0) {
+            decimalSum = (decimalSum ?: BigDecimal.ZERO).add(BigDecimal.valueOf(longSum)).add(BigDecimal.valueOf(value))
+            longSum = 0
+        } else {
+            longSum = total
+        }
+    }
+
+    /**
+     * Adds the fewest decimal places which read back as the double, as a long scaled to them, returning false if it needs
+     * more places or more digits than that allows.
+     */
+    private fun addDouble(value: Double): Boolean {
+        for (places in 0..MAX_SCALE) {
+            val unscaled = Math.rint(value * DOUBLE_POWERS[places])
+            if (Math.abs(unscaled) >= EXACT_DOUBLE_LIMIT) return false
+            if (unscaled / DOUBLE_POWERS[places] == value) {
+                addScaled(unscaled.toLong(), places)
+                return true
+            }
+        }
+        return false
+    }
+
+    private fun addScaled(unscaled: Long, places: Int) {
+        try {
+            if (places > scale) {
+                scaledSum = Math.multiplyExact(scaledSum, LONG_POWERS[places - scale])
+                scale = places
+            }
+            scaledSum = Math.addExact(scaledSum, Math.multiplyExact(unscaled, LONG_POWERS[scale - places]))
+        } catch (e: ArithmeticException) {
+            decimalSum = (decimalSum ?: BigDecimal.ZERO).add(BigDecimal.valueOf(scaledSum, scale))
+            scaledSum = unscaled
+            scale = places
+        }
+    }
+
+    /**
+     * The exact sum, or zero if there were no numbers.
+     */
+    val sum: BigDecimal get() {
+        val exact = decimalSum?.add(BigDecimal.valueOf(longSum)) ?: BigDecimal.valueOf(longSum)
+        return if (scaledSum == 0L) exact else exact.add(BigDecimal.valueOf(scaledSum, scale))
+    }
+
+    /**
+     * The sum in double arithmetic, which is cheaper but may be inexact.
+     */
+    val sumAsDouble: Double get() = longSum.toDouble() + (decimalSum?.toDouble() ?: 0.0) + doubleSum
+
+    val min: BigDecimal? get() = least?.numberValue
+    val max: BigDecimal? get() = greatest?.numberValue
+
+    /**
+     * The mean to 16 significant digits, or null if there were no numbers.
+     */
+    val average: BigDecimal? get() = if (count == 0) null else sum.divide(BigDecimal(count), MathContext.DECIMAL64)
+
+    override fun toString(): String = "count=$count, sum=$sum, min=$min, max=$max"
+
+    private companion object {
+        const val MAX_SCALE = 18
+        const val EXACT_DOUBLE_LIMIT = (1L shl 53).toDouble()
+
+        val DOUBLE_POWERS = DoubleArray(MAX_SCALE + 1) { Math.pow(10.0, it.toDouble()) }
+        val LONG_POWERS = LongArray(MAX_SCALE + 1).apply {
+            this[0] = 1
+            for (i in 1..MAX_SCALE) this[i] = this[i - 1] * 10
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package com.codepoetics.raffia.lenses
+
+import com.codepoetics.raffia.baskets.ArrayContents
+import com.codepoetics.raffia.baskets.Basket
+import java.util.*
+import java.util.concurrent.Callable
+import java.util.concurrent.ForkJoinPool
+import java.util.concurrent.ForkJoinTask
+import java.util.concurrent.RecursiveAction
+
+/**
+ * Evaluates a strand with its wildcard, conditional and slice steps split across a [ForkJoinPool] wherever they apply
+ * to an array of at least [threshold] items. Each range of the array is handled by its own task, and the ranges'
+ * results are joined in order, so matches and updates are exactly those of the strand evaluated sequentially.
+ *
+ * Predicates and updaters must be safe to call from several threads at once.
+ */
+class ParallelStrand @JvmOverloads constructor(
+        val strand: Strand,
+        private val pool: ForkJoinPool = ForkJoinPool.commonPool(),
+        private val threshold: Int = DEFAULT_THRESHOLD) : Strand {
+
+    private val steps = strand.steps()
+
+    override val path: String get() = strand.path
+
+    override fun get(basket: Basket): Sequence<Basket> {
+        val results = ArrayList<Basket>()
+        collect(basket, 0, results)
+        return results.asSequence()
+    }
+
+    override fun update(basket: Basket, updater: (Basket) -> Basket): Basket = update(basket, 0, updater)
+
+    override fun then(next: Strand): Strand = ParallelStrand(strand.then(next), pool, threshold)
+
+    override fun parallel(): Strand = this
+
+    override fun spliterator(basket: Basket): Spliterator<Basket> = strand.spliterator(basket)
+
+    override fun toString(): String = "parallel $path"
+
+    private fun collect(basket: Basket, index: Int, results: MutableList<Basket>) {
+        if (index == steps.size) {
+            results.add(basket)
+            return
+        }
+
+        val step = steps[index]
+        val next = index + 1
+        if (!isSplit(step, basket)) {
+            step[basket].forEach { collect(it, next, results) }
+            return
+        }
+
+        val contents = (basket as Basket.ArrayBasket).contents
+        val range = if (step is ArraySliceStrand) step.sliceRange(contents.size()) else 0 until contents.size()
+        inChunks(range) { chunk ->
+            val found = ArrayList<Basket>()
+            for (i in chunk) {
+                val item = contents[i]
+                if (step !is ConditionalStrand || step.predicate(item)) {
+                    collect(item, next, found)
+                }
+            }
+            found
+        }.forEach { results.addAll(it) }
+    }
+
+    private fun update(basket: Basket, index: Int, updater: (Basket) -> Basket): Basket {
+        if (index == steps.size) {
+            return updater(basket)
+        }
+
+        val step = steps[index]
+        val next = index + 1
+        if (!isSplit(step, basket)) {
+            return step.update(basket) { update(it, next, updater) }
+        }
+
+        val contents = (basket as Basket.ArrayBasket).contents
+        val size = contents.size()
+        val selected = if (step is ArraySliceStrand) step.sliceRange(size) else 0 until size
+        val chunks = inChunks(0 until size) { chunk ->
+            var changed = false
+            val items = chunk.map { i ->
+                val item = contents[i]
+                val selectedItem = i in selected && (step !is ConditionalStrand || step.predicate(item))
+                val updated = if (selectedItem) update(item, next, updater) else item
+                if (updated !== item) changed = true
+                updated
+            }
+            if (changed) items else null
+        }
+
+        if (chunks.all { it == null }) {
+            return basket
+        }
+        val items = ArrayList<Basket>(size)
+        val chunkSize = chunkSize(size)
+        chunks.forEachIndexed { i, chunk ->
+            if (chunk != null) {
+                items.addAll(chunk)
+            } else {
+                for (j in chunkRange(0 until size, i, chunkSize)) items.add(contents[j])
+            }
+        }
+        return Basket.ofArray(ArrayContents.of(items))
+    }
+
+    private fun isSplit(step: Strand, basket: Basket): Boolean =
+            (step is WildcardStrand || step is ConditionalStrand || step is ArraySliceStrand) &&
+                    basket is Basket.ArrayBasket && basket.contents.size() >= threshold
+
+    private fun chunkSize(length: Int): Int =
+            Math.max(1, (length + CHUNKS_PER_WORKER * pool.parallelism - 1) / (CHUNKS_PER_WORKER * pool.parallelism))
+
+    private fun chunkRange(range: IntRange, chunk: Int, chunkSize: Int): IntRange {
+        val start = range.first + chunk * chunkSize
+        return start..Math.min(range.last, start + chunkSize - 1)
+    }
+
+    /**
+     * Does some work on each chunk of a range in parallel, returning the chunks' results in order.
+     */
+    private fun <T> inChunks(range: IntRange, work: (IntRange) -> T): List<T> {
+        if (range.isEmpty()) {
+            return emptyList()
+        }
+
+        val length = range.last - range.first + 1
+        val chunkSize = chunkSize(length)
+        val chunkCount = (length + chunkSize - 1) / chunkSize
+        val tasks = (0 until chunkCount).map { chunk -> ForkJoinTask.adapt(Callable { work(chunkRange(range, chunk, chunkSize)) }) }
+        val all = object : RecursiveAction() {
+            override fun compute() {
+                ForkJoinTask.invokeAll(tasks)
+            }
+        }
+
+        if (ForkJoinTask.inForkJoinPool()) all.invoke() else pool.invoke(all)
+        return tasks.map { it.join() }
+    }
+
+    override fun equals(other: Any?): Boolean =
+            other is ParallelStrand && other.strand == strand && other.pool == pool && other.threshold == threshold
+
+    override fun hashCode(): Int = strand.hashCode()
+
+    companion object {
+        const val DEFAULT_THRESHOLD = 8192
+
+        private const val CHUNKS_PER_WORKER = 4
+    }
+}
@@ -1,71 +1,130 @@
 package com.codepoetics.raffia.lenses
 
 import com.codepoetics.raffia.baskets.Basket
-import org.pcollections.PVector
-import java.util.regex.Pattern
 
 typealias BasketPredicate = (Basket) -> Boolean
 
+/**
+ * Parses path strings in a single left-to-right scan, consuming one segment at a time.
+ */
 internal object PathParser {
 
-    private val keyExpr = Pattern.compile("^\\.[a-zA-Z0-9\\-_]+")
-    private val deepKeyExpr = Pattern.compile("^\\.\\.[a-zA-Z0-9\\-_]+")
-    private val indexExpr = Pattern.compile("^\\[([^]]+)]")
-    private val integerExpr = Pattern.compile("^-?[0-9]+$")
-
-    fun parse(pathString: String, predicates: PVector<BasketPredicate>): Strand {
+    fun parse(pathString: String, predicates: List<BasketPredicate>): Strand {
         val trimmed = pathString.trim()
         if (!trimmed.startsWith("$") and !trimmed.startsWith("@")) {
             throw IllegalArgumentException("Path string must begin with $ or @")
         }
-        return parseRemaining(RootStrand, trimmed.substring(1), predicates)
+        return Scanner(trimmed, predicates).parse()
     }
 
-    private fun parseRemaining(parsed: Strand, remaining: String, predicates: PVector<BasketPredicate>): Strand {
-        if (remaining.isEmpty()) {
-            if (!predicates.isEmpty()) {
+    private class Scanner(private val path: String, private val predicates: List<BasketPredicate>) {
+
+        private var position = 1
+        private var predicateIndex = 0
+
+        fun parse(): Strand {
+            var parsed: Strand = RootStrand
+            while (position < path.length) {
+                parsed = parsed.then(parseSegment())
+            }
+            if (predicateIndex < predicates.size) {
                 throw IllegalArgumentException("Unmatched predicate")
             }
             return parsed
         }
 
-        if (remaining.startsWith(".*")) {
-            return parseRemaining(parsed.then(WildcardStrand), remaining.substring(2), predicates)
+        private fun parseSegment(): Strand = when (path[position]) {
+            '.' -> parseDotted()
+            '[' -> parseBracketed()
+            else -> unrecognised()
         }
 
-        if (remaining.startsWith("[*]")) {
-            return parseRemaining(parsed.then(WildcardStrand), remaining.substring(3), predicates)
+        private fun parseDotted(): Strand {
+            if (path.startsWith(".*", position)) {
+                position += 2
+                return WildcardStrand
+            }
+            if (path.startsWith("..", position)) {
+                return DeepScanStrand(scanKey(position + 2))
+            }
+            return KeyStrand(arrayOf(scanKey(position + 1)))
         }
 
-        if (remaining.startsWith("[?]")) {
-            if (predicates.isEmpty()) {
-                throw IllegalArgumentException("Predicate expression without matching predicate")
+        private fun scanKey(start: Int): String {
+            var end = start
+            while (end < path.length && isKeyCharacter(path[end])) {
+                end++
             }
-
-            return parseRemaining(
-                    parsed.then(ConditionalStrand(predicates[0])),
-                    remaining.substring(3),
-                    predicates.minus(0))
+            if (end == start) {
+                unrecognised()
+            }
+            position = end
+            return path.substring(start, end)
         }
 
-        val keyExprMatcher = keyExpr.matcher(remaining)
-        if (keyExprMatcher.find()) {
-            val key = keyExprMatcher.group().substring(1)
-            return parseRemaining(parsed.then(KeyStrand(arrayOf(key))), remaining.substring(key.length + 1), predicates)
-        }
+        private fun parseBracketed(): Strand {
+            if (path.startsWith("[*]", position)) {
+                position += 3
+                return WildcardStrand
+            }
 
-        val deepKeyExprMatcher = deepKeyExpr.matcher(remaining)
-        if (deepKeyExprMatcher.find()) {
-            val key = deepKeyExprMatcher.group().substring(2)
-            return parseRemaining(parsed.then(DeepScanStrand(key)), remaining.substring(key.length + 2), predicates)
-        }
+            if (path.startsWith("[?(", position)) {
+                val close = closingParenthesis(position + 2)
+                val filter = FilterParser.parse(path.substring(position + 3, close))
+                position = close + 2
+                return ConditionalStrand(filter)
+            }
 
-        val indexExprMatcher = indexExpr.matcher(remaining)
-        if (!indexExprMatcher.find()) {
-            throw IllegalArgumentException("Unrecognised path segment: " + remaining)
+            if (path.startsWith("[?]", position)) {
+                if (predicateIndex >= predicates.size) {
+                    throw IllegalArgumentException("Predicate expression without matching predicate")
+                }
+                position += 3
+                return ConditionalStrand(predicates[predicateIndex++])
+            }
+
+            val close = path.indexOf(']', position + 1)
+            if (close <= position + 1) {
+                unrecognised()
+            }
+            val expression = path.substring(position + 1, close)
+            position = close + 1
+            return parseIndexExpression(expression.trim { it <= ' ' })
+        }
+
+        /**
+         * Finds the parenthesis closing the one at [open], which must be followed by `]`, skipping quoted strings.
+         */
+        private fun closingParenthesis(open: Int): Int {
+            var depth = 0
+            var index = open
+            while (index < path.length) {
+                when (path[index]) {
+                    '(' -> depth++
+                    ')' -> if (--depth == 0) {
+                        if (index + 1 < path.length && path[index + 1] == ']') return index
+                        unrecognised()
+                    }
+                    '\'', '"' -> {
+                        index = path.indexOf(path[index], index + 1)
+                        if (index < 0) unrecognised()
+                    }
+                }
+                index++
+            }
+            unrecognised()
         }
-        val indexExpr = indexExprMatcher.group(1)
-        return parseRemaining(parsed.then(parseIndexExpression(indexExpr.trim { it <= ' ' })), remaining.substring(indexExpr.length + 2), predicates)
+
+        private fun unrecognised(): Nothing =
+                throw IllegalArgumentException("Unrecognised path segment: " + path.substring(position))
+    }
+
+    fun isKeyCharacter(c: Char): Boolean =
+            c in 'a'..'z' || c in 'A'..'Z' || c in '0'..'9' || c == '-' || c == '_'
+
+    private fun isInteger(expression: String): Boolean {
+        val start = if (expression.startsWith("-")) 1 else 0
+        return expression.length > start && (start until expression.length).all { expression[it] in '0'..'9' }
     }
 
     private fun parseIndexExpression(expression: String): Strand {
@@ -81,15 +140,15 @@ internal object PathParser {
             return KeyStrand(arrayOf(expression.substring(1, expression.length - 1)))
         }
 
-        if (integerExpr.matcher(expression).matches()) {
-            return IndexStrand(intArrayOf(Integer.valueOf(expression)!!))
+        if (isInteger(expression)) {
+            return IndexStrand(intArrayOf(Integer.parseInt(expression)))
         }
 
         throw IllegalArgumentException("Unrecognised index expression: " + expression)
     }
 
     private fun parseMultiIndexExpression(expression: String): Strand {
-        val indices = expression.split(",".toRegex()).dropLastWhile { it.isEmpty() }.toTypedArray()
+        val indices = expression.split(',').dropLastWhile { it.isEmpty() }.toTypedArray()
         if (indices[0].trim { it <= ' ' }.startsWith("'")) {
             return toKeys(indices)
         }
@@ -110,7 +169,7 @@ internal object PathParser {
             return ArraySliceStrand(Integer.parseInt(expression.substring(0, expression.length - 1)), Integer.MAX_VALUE)
         }
 
-        val bounds = expression.split(":".toRegex()).dropLastWhile { it.isEmpty() }.toTypedArray()
+        val bounds = expression.split(':').dropLastWhile { it.isEmpty() }.toTypedArray()
         if (bounds.size != 2) {
             throw IllegalArgumentException("\"" + expression + "\" is not a legal range expression")
         }
@@ -123,10 +182,10 @@ internal object PathParser {
 
     private fun toArrayIndices(indices: Array<String>): Strand =
         IndexStrand(indices.map(String::trim).map {
-            if (!integerExpr.matcher(it).matches())
+            if (!isInteger(it))
                 throw IllegalArgumentException("Unrecognised index expression: $it")
             else
-                Integer.valueOf(it)
+                Integer.parseInt(it)
         }.toIntArray())
 
 }
@@ -0,0 +1,182 @@
+package com.codepoetics.raffia.lenses
+
+import com.codepoetics.raffia.baskets.Basket
+import com.codepoetics.raffia.baskets.KeySummaries
+import com.codepoetics.raffia.baskets.ObjectEntry
+import java.util.*
+import java.util.concurrent.ConcurrentHashMap
+
+/**
+ * Evaluates many named strands against a basket in a single traversal. The strands are merged into a trie on their
+ * steps, so that a prefix shared by several queries is walked only once, and all the `..key` scans leaving the same
+ * point are made together in one walk of the tree beneath it.
+ *
+ * Each query's results are in the same order as those of its own strand's `getAll`.
+ */
+class QuerySet private constructor(private val queries: List<Pair<String, Strand>>) {
+
+    fun with(name: String, strand: Strand): QuerySet {
+        if (queries.any { it.first == name }) {
+            throw IllegalArgumentException("Duplicate query name: $name")
+        }
+        return QuerySet(queries + (name to strand))
+    }
+
+    fun with(name: String, path: String): QuerySet = with(name, Strands.strand(path))
+
+    val names: List<String> get() = queries.map { it.first }
+
+    private val root: Node by lazy {
+        val root = Node()
+        queries.forEachIndexed { query, (_, strand) -> root.add(strand.steps(), 0, query) }
+        root
+    }
+
+    /**
+     * The matches of every query, keyed by query name in the order the queries were added.
+     */
+    fun evaluate(basket: Basket): Map<String, List<Basket>> {
+        val results = Array(queries.size) { ArrayList<Basket>() }
+        root.evaluate(basket, results)
+
+        val byName = LinkedHashMap<String, List<Basket>>()
+        queries.forEachIndexed { query, (name, _) -> byName[name] = results[query] }
+        return byName
+    }
+
+    private class Edge(val step: Strand, val node: Node) {
+        val plan: StrandPlan by lazy { StrandPlan.of(step) }
+    }
+
+    /**
+     * A `..key` scan shared by the queries reaching the same node, which uses key summaries if any of them asked to.
+     */
+    private class Scan(val key: String, val node: Node) {
+        var keyBits = 0L
+    }
+
+    private class Node {
+        private val accepting = ArrayList<Int>()
+        private val edges = ArrayList<Edge>()
+        private val deepScans = ArrayList<Scan>()
+        private val allScans: ScanSet by lazy { ScanSet(deepScans) }
+
+        fun add(steps: List<Strand>, index: Int, query: Int) {
+            if (index == steps.size) {
+                accepting.add(query)
+                return
+            }
+
+            val step = steps[index]
+            val child = if (step is DeepScanStrand && step.maxDepth == Descendants.UNBOUNDED) {
+                val scan = deepScans.firstOrNull { it.key == step.key } ?: Scan(step.key, Node()).also { deepScans.add(it) }
+                if (step.usingKeySummaries) scan.keyBits = KeySummaries.bitsOf(step.key)
+                scan.node
+            } else {
+                edges.firstOrNull { it.step == step }?.node ?: Node().also { edges.add(Edge(step, it)) }
+            }
+            child.add(steps, index + 1, query)
+        }
+
+        fun evaluate(basket: Basket, results: Array<ArrayList<Basket>>) {
+            for (query in accepting) {
+                results[query].add(basket)
+            }
+
+            for (edge in edges) {
+                edge.plan.run(basket, object : BasketSink {
+                    override fun accept(basket: Basket): Boolean {
+                        edge.node.evaluate(basket, results)
+                        return true
+                    }
+                })
+            }
+
+            if (!deepScans.isEmpty()) {
+                deepScan(basket, results)
+            }
+        }
+
+        /**
+         * Scans for several keys at once. As with a single `..key` scan, the value of a matching property is not itself
+         * scanned for that key, but is still scanned for the others. A subtree is passed over if every scan uses key
+         * summaries and they rule out all the keys. The tree is walked with an explicit stack, so that deep nesting
+         * cannot overflow the call stack.
+         */
+        private fun deepScan(basket: Basket, results: Array<ArrayList<Basket>>) {
+            val all = allScans
+            if (all.rulesOut(basket)) return
+
+            val stack = ArrayDeque<Pending>()
+            children(basket)?.let { stack.push(Pending(it, all)) }
+            while (!stack.isEmpty()) {
+                val pending = stack.peek()
+                if (!pending.children.hasNext()) {
+                    stack.pop()
+                    continue
+                }
+
+                val child = pending.children.next()
+                var scans = pending.scans
+                val value = if (child is ObjectEntry) {
+                    val match = scans.find(child.key)
+                    if (match != null) {
+                        match.node.evaluate(child.value, results)
+                        scans = scans.without(match)
+                    }
+                    child.value
+                } else {
+                    child as Basket
+                }
+
+                if (!scans.isEmpty && !scans.rulesOut(value)) {
+                    children(value)?.let { stack.push(Pending(it, scans)) }
+                }
+            }
+        }
+
+        private fun children(basket: Basket): Iterator<Any>? = when (basket) {
+            is Basket.ObjectBasket -> basket.properties.iterator()
+            is Basket.ArrayBasket -> basket.contents.iterator()
+            else -> null
+        }
+    }
+
+    /**
+     * The children of a container still to be scanned, and the scans still looking beneath them.
+     */
+    private class Pending(val children: Iterator<Any>, val scans: ScanSet)
+
+    /**
+     * Some of a node's scans, each set remembering the sets left once one of its scans has matched, so that these are
+     * made only once rather than for each match.
+     */
+    private class ScanSet(private val scans: List<Scan>) {
+        private val remaining = ConcurrentHashMap<Scan, ScanSet>()
+        private val pruning = !scans.isEmpty() && scans.all { it.keyBits != 0L }
+
+        val isEmpty: Boolean get() = scans.isEmpty()
+
+        fun find(key: String): Scan? {
+            for (i in scans.indices) {
+                if (scans[i].key == key) return scans[i]
+            }
+            return null
+        }
+
+        fun without(scan: Scan): ScanSet = remaining.getOrPut(scan) { ScanSet(scans - scan) }
+
+        fun rulesOut(basket: Basket): Boolean = pruning && scans.none { KeySummaries.mayContain(basket, it.keyBits) }
+    }
+
+    companion object {
+        private val EMPTY = QuerySet(emptyList())
+
+        @JvmStatic
+        fun empty(): QuerySet = EMPTY
+
+        @JvmStatic
+        fun of(queries: Map<String, Strand>): QuerySet =
+                queries.entries.fold(EMPTY) { set, (name, strand) -> set.with(name, strand) }
+    }
+}
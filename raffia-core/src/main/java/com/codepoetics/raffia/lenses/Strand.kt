@@ -2,19 +2,54 @@ package com.codepoetics.raffia.lenses
 
 import com.codepoetics.raffia.baskets.ArrayContents
 import com.codepoetics.raffia.baskets.Basket
+import com.codepoetics.raffia.baskets.KeySummaries
 import com.codepoetics.raffia.baskets.ObjectEntry
 import com.codepoetics.raffia.baskets.PropertySet
+import com.codepoetics.raffia.baskets.SlotCache
 import com.codepoetics.raffia.predicates.BasketPredicates
 import com.codepoetics.raffia.predicates.NumberPredicates
 import com.codepoetics.raffia.predicates.StringPredicates
-import org.pcollections.TreePVector
 import java.math.BigDecimal
 import java.util.*
+import java.util.concurrent.ConcurrentHashMap
+import java.util.stream.Stream
+import java.util.stream.StreamSupport
 
 object Strands {
 
+    private const val MAX_CACHED_PATHS = 4096
+
+    /**
+     * Strands parsed from paths without predicates, which are immutable and so can be shared.
+     */
+    private val parsed = ConcurrentHashMap<String, Strand>()
+
+    @JvmStatic
+    fun strand(path: String, vararg predicates: BasketPredicate): Strand =
+            if (predicates.isEmpty()) strand(path) else PathParser.parse(path, predicates.asList())
+
+    /**
+     * Without predicates, so that Java callers need not create a generic varargs array.
+     */
     @JvmStatic
-    fun strand(path: String, vararg predicates: BasketPredicate): Strand = PathParser.parse(path, TreePVector.from(predicates.toList()))
+    fun strand(path: String): Strand {
+        val cached = parsed[path]
+        if (cached != null) {
+            return cached
+        }
+
+        val strand = PathParser.parse(path, emptyList())
+        if (parsed.size < MAX_CACHED_PATHS) {
+            parsed.putIfAbsent(path, strand)
+        }
+        return strand
+    }
+
+    /**
+     * The steps a strand takes from its root, one segment of its path each.
+     */
+    @JvmStatic
+    fun steps(strand: Strand): List<Strand> = strand.steps()
 
 }
 
@@ -24,6 +59,29 @@ interface Strand {
 
     fun update(basket: Basket, updater: (Basket) -> Basket): Basket
 
+    /**
+     * Compiles this strand into a plan which pushes each match into a [BasketSink].
+     */
+    fun compile(): StrandPlan = StrandPlan.of(this)
+
+    /**
+     * Passes each match to the sink until it asks to stop, returning false if it did.
+     */
+    fun forEach(basket: Basket, sink: BasketSink): Boolean = compile().run(basket, sink)
+
+    /**
+     * This strand, with its steps over large arrays split across the common fork-join pool.
+     */
+    fun parallel(): Strand = ParallelStrand(this)
+
+    /**
+     * The matches of this strand as a stream, which splits by ranges of the first array or object the strand fans out
+     * over so that it can be processed in parallel.
+     */
+    fun stream(basket: Basket): Stream<Basket> = StreamSupport.stream(spliterator(basket), false)
+
+    fun spliterator(basket: Basket): Spliterator<Basket> = StrandSpliterator.of(this, basket)
+
     fun set(basket: Basket, newValue: Basket): Basket = update(basket) { newValue }
     fun set(basket: Basket, newValue: String): Basket = set(basket, Basket.ofString(newValue))
     fun set(basket: Basket, newValue: BigDecimal): Basket = set(basket, Basket.ofNumber(newValue))
@@ -35,16 +93,79 @@ interface Strand {
     fun to(vararg indices: Int): Strand = then(IndexStrand(indices))
     fun to(vararg keys: String): Strand = then(KeyStrand(keys))
     fun toDeep(key: String): Strand = then(DeepScanStrand(key))
+    fun toDeep(key: String, maxDepth: Int): Strand = then(DeepScanStrand(key, maxDepth))
     fun toAll(): Strand = then(WildcardStrand)
     fun toEverything(): Strand = then(DeepWildcardStrand)
+    fun toEverything(maxDepth: Int): Strand = then(BoundedDeepWildcardStrand(maxDepth))
     fun toMatching(predicate: (Basket) -> Boolean) = then(ConditionalStrand(predicate))
 
-    fun getSingle(basket: Basket): Basket = get(basket).single()
+    /**
+     * This strand, with its `..key` scans passing over subtrees which the containers' cached key summaries show cannot
+     * contain the key. The summaries are computed the first time a basket is scanned this way, which costs one walk of
+     * it, so this pays off where the same baskets are scanned repeatedly.
+     */
+    fun withKeySummaries(): Strand =
+            steps().fold(RootStrand as Strand) { strand, step ->
+                strand.then(if (step is DeepScanStrand) step.copy(usingKeySummaries = true) else step)
+            }
+
+    fun getSingle(basket: Basket): Basket = get(basket, 0, 2).single()
     fun getString(basket: Basket): String = getSingle(basket).asString()
     fun getNumber(basket: Basket): BigDecimal = getSingle(basket).asNumber()
     fun getBoolean(basket: Basket): Boolean = getSingle(basket).asBoolean()
 
     fun getAll(basket: Basket): List<Basket> = get(basket).toList()
+
+    /**
+     * At most [limit] matches, after skipping the first [offset], stopping the traversal as soon as there are enough.
+     */
+    fun get(basket: Basket, offset: Int, limit: Int): List<Basket> = compile().page(basket, offset, limit)
+
+    fun getFirst(basket: Basket): Basket? = get(basket, 0, 1).firstOrNull()
+    fun exists(basket: Basket): Boolean = getFirst(basket) != null
+    fun count(basket: Basket): Int = compile().count(basket)
+
+    /**
+     * Folds the numbers matched into a [NumberSummary] as they are found, without collecting them.
+     */
+    fun summarise(basket: Basket): NumberSummary = NumberSummary().apply { forEach(basket, this) }
+
+    fun sum(basket: Basket): BigDecimal = summarise(basket).sum
+    fun min(basket: Basket): BigDecimal? = summarise(basket).min
+    fun max(basket: Basket): BigDecimal? = summarise(basket).max
+    fun average(basket: Basket): BigDecimal? = summarise(basket).average
+
+    /**
+     * The number of times each distinct value is matched, in the order the values are first found.
+     */
+    fun countBy(basket: Basket): Map<Basket, Int> {
+        val counts = LinkedHashMap<Basket, IntArray>()
+        forEach(basket, object : BasketSink {
+            override fun accept(basket: Basket): Boolean {
+                counts.getOrPut(basket) { IntArray(1) }[0]++
+                return true
+            }
+        })
+        return counts.mapValues { it.value[0] }
+    }
+
+    /**
+     * The matches grouped by the first value the key strand finds in each; matches in which it finds none are left out.
+     */
+    fun groupBy(basket: Basket, key: Strand): Map<Basket, List<Basket>> {
+        val groups = LinkedHashMap<Basket, MutableList<Basket>>()
+        forEach(basket, object : BasketSink {
+            override fun accept(basket: Basket): Boolean {
+                val group = key.getFirst(basket)
+                if (group != null) {
+                    groups.getOrPut(group) { ArrayList() }.add(basket)
+                }
+                return true
+            }
+        })
+        return groups
+    }
+
     fun getAllStrings(basket: Basket): List<String> = get(basket).map(Basket::asString).toList()
     fun getAllNumbers(basket: Basket): List<BigDecimal> = get(basket).map(Basket::asNumber).toList()
     fun getAllBooleans(basket: Basket): List<Boolean> = get(basket).map(Basket::asBoolean).toList()
@@ -54,11 +175,20 @@ interface Strand {
     fun matches(boolean: Boolean): (Basket) -> Boolean = matchesBoolean { it == boolean }
     fun isTrue(): (Basket) -> Boolean = matches(true)
     fun isFalse(): (Basket) -> Boolean = matches(false)
-    fun isNull(): (Basket) -> Boolean = { get(it).filter(Basket::isNull).any() }
-
-    fun matchesString(predicate: (String) -> Boolean): (Basket) -> Boolean = { get(it).filter(BasketPredicates.isString(predicate)).any() }
-    fun matchesNumber(predicate: (BigDecimal) -> Boolean): (Basket) -> Boolean = { get(it).filter(BasketPredicates.isNumber(predicate)).any() }
-    fun matchesBoolean(predicate: (Boolean) -> Boolean): (Basket) -> Boolean = { get(it).filter(BasketPredicates.isBoolean(predicate)).any() }
+    fun isNull(): (Basket) -> Boolean = matching(Basket::isNull)
+
+    fun matchesString(predicate: (String) -> Boolean): (Basket) -> Boolean = matching(BasketPredicates.isString(predicate))
+    fun matchesNumber(predicate: (BigDecimal) -> Boolean): (Basket) -> Boolean = matching(BasketPredicates.isNumber(predicate))
+    fun matchesBoolean(predicate: (Boolean) -> Boolean): (Basket) -> Boolean = matching(BasketPredicates.isBoolean(predicate))
+
+    /**
+     * Tests whether any match satisfies the predicate, stopping at the first which does.
+     */
+    fun matching(predicate: (Basket) -> Boolean): (Basket) -> Boolean = { basket ->
+        !forEach(basket, object : BasketSink {
+            override fun accept(basket: Basket): Boolean = !predicate(basket)
+        })
+    }
 }
 
 object RootStrand : Strand {
@@ -70,13 +200,59 @@ object RootStrand : Strand {
 }
 
 data class ComposedStrand(val first: Strand, val second: Strand): Strand {
-    override val path = "${first.path}${second.path}"
+    /**
+     * Built once from all of the composed parts, rather than from the paths of each nested composition in turn.
+     */
+    override val path: String by lazy { parts().joinToString("") { it.path } }
+
+    private val plan by lazy { StrandPlan.of(this) }
 
-    override fun get(basket: Basket): Sequence<Basket> = first[basket].flatMap { second[it] }
+    override fun compile(): StrandPlan = plan
+
+    override fun get(basket: Basket): Sequence<Basket> = plan.matches(basket)
 
     override fun update(basket: Basket, updater: (Basket) -> Basket): Basket = first.update(basket) { second.update(it, updater) }
 }
 
+/**
+ * The individual steps making up a strand, with any composition flattened out and the root step dropped.
+ */
+internal fun Strand.steps(): List<Strand> = when (this) {
+    is RootStrand -> emptyList()
+    is ComposedStrand -> parts().filter { it !is RootStrand }
+    else -> listOf(this)
+}
+
+/**
+ * The strands composed into this one, in order, found with an explicit stack as compositions nest one level per step.
+ */
+private fun ComposedStrand.parts(): List<Strand> {
+    val parts = ArrayList<Strand>()
+    val stack = ArrayDeque<Strand>()
+    stack.push(this)
+    while (!stack.isEmpty()) {
+        val strand = stack.pop()
+        if (strand is ComposedStrand) {
+            stack.push(strand.second)
+            stack.push(strand.first)
+        } else {
+            parts.add(strand)
+        }
+    }
+    return parts
+}
+
+internal fun composed(steps: List<Strand>): Strand = if (steps.isEmpty()) RootStrand else steps.reduce(Strand::then)
+
+/*
+ * Updates return the basket they were given, by reference, wherever nothing beneath it changed.
+ */
+internal fun Basket.ArrayBasket.withContents(updated: ArrayContents): Basket =
+        if (updated === contents) this else Basket.ofArray(updated)
+
+internal fun Basket.ObjectBasket.withProperties(updated: PropertySet): Basket =
+        if (updated === properties) this else Basket.ofObject(updated)
+
 data class IndexStrand(val indices: IntArray): Strand {
     override val path = indices.map(Int::toString).joinToString(",","[", "]")
 
@@ -101,7 +277,7 @@ data class IndexStrand(val indices: IntArray): Strand {
             indicesInBounds(contents.size()).fold(contents) { c, index -> c.with(index, updater(contents[index])) }
 
     override fun update(basket: Basket, updater: (Basket) -> Basket): Basket = when(basket) {
-        is Basket.ArrayBasket -> Basket.ofArray(updateContents(basket.contents, updater))
+        is Basket.ArrayBasket -> basket.withContents(updateContents(basket.contents, updater))
         else -> basket
     }
 
@@ -120,19 +296,20 @@ data class IndexStrand(val indices: IntArray): Strand {
 data class KeyStrand(val keys: Array<out String>): Strand {
     override val path = if (keys.size == 1) ".${keys[0]}" else keys.map { "'$it'" }.joinToString(",", "[", "]")
 
+    internal val slotCaches = keys.map(::SlotCache)
+
     override fun get(basket: Basket): Sequence<Basket> = when(basket) {
-        is Basket.ObjectBasket -> keysInBasket(basket).map { basket.getProperty(it)!! }
+        is Basket.ObjectBasket -> slotCaches.asSequence().mapNotNull { basket.properties[it] }
         else -> emptySequence()
     }
 
     override fun update(basket: Basket, updater: (Basket) -> Basket): Basket = when(basket) {
-        is Basket.ObjectBasket -> Basket.ofObject(
-                keysInBasket(basket).fold(basket.properties) { p, k -> p.with(k, updater(p[k]!!)) }
+        is Basket.ObjectBasket -> basket.withProperties(
+                slotCaches.fold(basket.properties) { p, c -> p[c]?.let { p.with(c.key, updater(it)) } ?: p }
         )
         else -> basket
     }
 
-    private fun keysInBasket(basket: Basket): Sequence<String> = keys.asSequence().filter(basket::containsKey)
     override fun equals(other: Any?): Boolean {
         if (this === other) return true
         if (javaClass != other?.javaClass) return false
@@ -153,16 +330,18 @@ data class ArraySliceStrand(val start:Int, val end:Int): Strand {
         else -> emptySequence()
     }
 
-    private fun sliceIndices(size: Int): Sequence<Int> {
+    private fun sliceIndices(size: Int): Sequence<Int> = sliceRange(size).asSequence()
+
+    internal fun sliceRange(size: Int): IntRange {
         val relativeStart = bound(start, size)
         val relativeEnd = if (end == Int.MAX_VALUE) size else bound(end, size)
-        return (relativeStart until relativeEnd).asSequence()
+        return relativeStart until relativeEnd
     }
 
     private fun bound(index: Int, size: Int): Int = Math.min(size - 1, Math.max(0, if (index < 0) size + index  else index))
 
     override fun update(basket: Basket, updater: (Basket) -> Basket) : Basket = when(basket) {
-        is Basket.ArrayBasket -> Basket.ofArray(
+        is Basket.ArrayBasket -> basket.withContents(
                 sliceIndices(basket.size()).fold(basket.contents) { c, i -> c.with(i, updater(c[i])) }
         )
         else -> basket
@@ -170,7 +349,7 @@ data class ArraySliceStrand(val start:Int, val end:Int): Strand {
 }
 
 data class ConditionalStrand(val predicate: (Basket) -> Boolean): Strand {
-    override val path = "[?]"
+    override val path = if (predicate is Filter) "[?($predicate)]" else "[?]"
 
     override fun get(basket: Basket): Sequence<Basket> = when(basket) {
         is Basket.ObjectBasket -> basket.properties.asSequence().map(ObjectEntry::value).filter(predicate)
@@ -179,35 +358,34 @@ data class ConditionalStrand(val predicate: (Basket) -> Boolean): Strand {
     }
 
     override fun update(basket: Basket, updater: (Basket) -> Basket): Basket = when(basket) {
-        is Basket.ObjectBasket -> Basket.ofObject(basket.properties.asSequence()
-                .filter { predicate(it.value) }
-                .fold(basket.properties) { p, e -> p.with(e.key, updater(e.value)) })
-        is Basket.ArrayBasket -> Basket.ofArray(basket.contents.mapIndexed { index, item -> index to item }
-                .filter { predicate(it.second) }
-                .fold(basket.contents) { c, e -> c.with(e.first, updater(e.second)) })
+        is Basket.ObjectBasket -> basket.withProperties(
+                basket.properties.mapValues { if (predicate(it)) updater(it) else it })
+        is Basket.ArrayBasket -> basket.withContents(
+                basket.contents.map { if (predicate(it)) updater(it) else it })
         else -> if (predicate(basket)) updater(basket) else basket
     }
 
 }
 
-data class DeepScanStrand(val key: String): Strand {
+/**
+ * Matches the values of properties with the given key at any depth, or up to [maxDepth] levels beneath the basket. If
+ * [usingKeySummaries] is set, subtrees which cannot contain the key are passed over. Neither shows in the path, which
+ * JsonPath has no way to write them in, but both show in the string form.
+ */
+data class DeepScanStrand @JvmOverloads constructor(
+        val key: String,
+        val maxDepth: Int = Descendants.UNBOUNDED,
+        val usingKeySummaries: Boolean = false): Strand {
     override val path = "..${key}"
 
-    override fun get(basket: Basket): Sequence<Basket> = when(basket) {
-        is Basket.ObjectBasket -> basket.properties.asSequence().flatMap {
-            if (it.key == key) sequenceOf(it.value) else get(it.value)
-        }
-        is Basket.ArrayBasket -> basket.contents.asSequence().flatMap(this::get)
-        else -> emptySequence()
-    }
+    private val plan by lazy { StrandPlan.of(this) }
 
-    override fun update(basket: Basket, updater: (Basket) -> Basket): Basket = when(basket) {
-        is Basket.ObjectBasket -> Basket.ofObject(PropertySet.of(basket.properties.map {
-            ObjectEntry.of(it.key, if (it.key == key) updater(it.value) else update(it.value, updater))
-        }))
-        is Basket.ArrayBasket -> Basket.ofArray(basket.contents.map { update(it, updater) })
-        else -> basket
-    }
+    override fun compile(): StrandPlan = plan
+
+    override fun get(basket: Basket): Sequence<Basket> = plan.matches(basket)
+
+    override fun update(basket: Basket, updater: (Basket) -> Basket): Basket =
+            Descendants.updateKey(basket, key, maxDepth, if (usingKeySummaries) KeySummaries.bitsOf(key) else 0L, updater)
 }
 
 object WildcardStrand: Strand {
@@ -220,28 +398,43 @@ object WildcardStrand: Strand {
     }
 
     override fun update(basket: Basket, updater: (Basket) -> Basket): Basket = when(basket) {
-        is Basket.ArrayBasket -> Basket.ofArray(basket.contents.map(updater))
-        is Basket.ObjectBasket -> Basket.ofObject(basket.properties.mapValues(updater))
+        is Basket.ArrayBasket -> basket.withContents(basket.contents.map(updater))
+        is Basket.ObjectBasket -> basket.withProperties(basket.properties.mapValues(updater))
         else -> updater(basket)
     }
 
 }
 
+/**
+ * Matches every value beneath the basket.
+ */
 object DeepWildcardStrand: Strand {
     override val path = "..*"
 
-    override fun get(basket: Basket): Sequence<Basket> = when(basket) {
-        is Basket.ArrayBasket -> basket.contents.let { it.asSequence() + it.asSequence().flatMap(this::get) }
-        is Basket.ObjectBasket -> basket.properties.let {
-            it.asSequence().map(ObjectEntry::value) + it.asSequence().map(ObjectEntry::value).flatMap(this::get)
-        }
-        else -> sequenceOf(basket)
-    }
+    private val plan by lazy { StrandPlan.of(this) }
 
-    override fun update(basket: Basket, updater: (Basket) -> Basket): Basket = when(basket) {
-        is Basket.ArrayBasket -> Basket.ofArray(basket.contents.map { updater(update(it, updater)) })
-        is Basket.ObjectBasket -> Basket.ofObject(basket.properties.mapValues(updater))
-        else -> updater(basket)
-    }
+    override fun compile(): StrandPlan = plan
+
+    override fun get(basket: Basket): Sequence<Basket> = plan.matches(basket)
+
+    override fun update(basket: Basket, updater: (Basket) -> Basket): Basket =
+            Descendants.updateAll(basket, Descendants.UNBOUNDED, updater)
+
+}
+
+/**
+ * Matches every value up to [maxDepth] levels beneath the basket. Its path is that of an unbounded `..*` scan, as
+ * JsonPath has no way to write the bound, which shows in its string form instead.
+ */
+data class BoundedDeepWildcardStrand(val maxDepth: Int): Strand {
+    override val path = "..*"
+
+    private val plan by lazy { StrandPlan.of(this) }
+
+    override fun compile(): StrandPlan = plan
+
+    override fun get(basket: Basket): Sequence<Basket> = plan.matches(basket)
 
+    override fun update(basket: Basket, updater: (Basket) -> Basket): Basket =
+            Descendants.updateAll(basket, maxDepth, updater)
 }
\ No newline at end of file
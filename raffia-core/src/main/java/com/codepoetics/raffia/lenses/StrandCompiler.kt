@@ -0,0 +1,154 @@
+package com.codepoetics.raffia.lenses
+
+import com.codepoetics.raffia.baskets.Basket
+import com.codepoetics.raffia.baskets.SlotCache
+import java.util.*
+import java.util.concurrent.ConcurrentHashMap
+
+/**
+ * Compiles strands into generated classes, one per strand, whose traversal code is specialised to the strand's steps so
+ * that the JIT can inline a whole lookup. Generation needs ASM on the classpath; without it, strands are returned as
+ * they are, and run through their [StrandPlan] as usual.
+ *
+ * Compiled strands are cached and may be shared between threads.
+ */
+object StrandCompiler {
+
+    private const val MAX_CACHED = 1024
+
+    private val cache = ConcurrentHashMap<Strand, Strand>()
+
+    @JvmStatic
+    val isAvailable: Boolean = try {
+        Class.forName("org.objectweb.asm.ClassWriter", false, StrandCompiler::class.java.classLoader)
+        true
+    } catch (e: ClassNotFoundException) {
+        false
+    }
+
+    @JvmStatic
+    fun compile(strand: Strand): Strand {
+        if (!isAvailable || strand is GeneratedStrand) {
+            return strand
+        }
+
+        val cached = cache[strand]
+        if (cached != null) {
+            return cached
+        }
+
+        val compiled = GeneratedStrand(strand, StrandGenerator.generate(strand.steps()))
+        if (cache.size >= MAX_CACHED) {
+            return compiled
+        }
+        return cache.putIfAbsent(strand, compiled) ?: compiled
+    }
+
+    private class GeneratedStrand(private val strand: Strand, private val plan: GeneratedPlan) : Strand {
+        override val path: String get() = strand.path
+
+        /**
+         * The generated plan can only push its matches, so matches pulled one at a time come from the strand itself.
+         */
+        override fun get(basket: Basket): Sequence<Basket> = strand[basket]
+
+        override fun getAll(basket: Basket): List<Basket> {
+            val results = ArrayList<Basket>()
+            plan.run(basket, object : BasketSink {
+                override fun accept(basket: Basket): Boolean = results.add(basket)
+            })
+            return results
+        }
+
+        override fun get(basket: Basket, offset: Int, limit: Int): List<Basket> =
+                StrandPlan.page(offset, limit) { plan.run(basket, it) }
+
+        override fun count(basket: Basket): Int = StrandPlan.Counter().apply { plan.run(basket, this) }.count
+
+        override fun forEach(basket: Basket, sink: BasketSink): Boolean = plan.run(basket, sink)
+
+        override fun update(basket: Basket, updater: (Basket) -> Basket): Basket = strand.update(basket, updater)
+
+        override fun compile(): StrandPlan = strand.compile()
+
+        override fun spliterator(basket: Basket): Spliterator<Basket> = strand.spliterator(basket)
+
+        override fun toString(): String = "compiled $path"
+    }
+}
+
+/**
+ * The superclass of generated strand classes, holding the constants (keys, indices, predicates) they refer to.
+ */
+abstract class GeneratedPlan(@JvmField protected val constants: Array<Any?>) {
+    abstract fun run(basket: Basket, sink: BasketSink): Boolean
+}
+
+/**
+ * The operations called from generated code.
+ */
+internal object GeneratedSteps {
+
+    @JvmStatic
+    fun property(basket: Basket, slotCache: SlotCache): Basket? =
+            if (basket is Basket.ObjectBasket) basket.properties[slotCache] else null
+
+    @JvmStatic
+    fun item(basket: Basket, index: Int): Basket? {
+        if (basket !is Basket.ArrayBasket) return null
+        val size = basket.contents.size()
+        val actual = if (index < 0) size + index else index
+        return if (actual < 0 || actual >= size) null else basket.contents[actual]
+    }
+
+    @JvmStatic
+    fun properties(basket: Basket, slotCaches: Array<SlotCache>): Iterator<Basket> {
+        if (basket !is Basket.ObjectBasket) return Collections.emptyIterator()
+        val values = ArrayList<Basket>(slotCaches.size)
+        for (i in slotCaches.indices) {
+            values.add(basket.properties[slotCaches[i]] ?: continue)
+        }
+        return values.iterator()
+    }
+
+    @JvmStatic
+    fun items(basket: Basket, indices: IntArray): Iterator<Basket> {
+        if (basket !is Basket.ArrayBasket) return Collections.emptyIterator()
+        val items = ArrayList<Basket>(indices.size)
+        for (i in indices.indices) {
+            items.add(item(basket, indices[i]) ?: continue)
+        }
+        return items.iterator()
+    }
+
+    @JvmStatic
+    fun slice(basket: Basket, strand: ArraySliceStrand): Iterator<Basket> {
+        if (basket !is Basket.ArrayBasket) return Collections.emptyIterator()
+        val contents = basket.contents
+        val range = strand.sliceRange(contents.size())
+        return object : Iterator<Basket> {
+            private var index = range.first
+            override fun hasNext(): Boolean = index <= range.last
+            override fun next(): Basket = contents[index++]
+        }
+    }
+
+    /**
+     * The values of an object or items of an array, or a scalar itself.
+     */
+    @JvmStatic
+    fun children(basket: Basket): Iterator<Basket> = when (basket) {
+        is Basket.ArrayBasket -> basket.contents.iterator()
+        is Basket.ObjectBasket -> {
+            val entries = basket.properties.iterator()
+            object : Iterator<Basket> {
+                override fun hasNext(): Boolean = entries.hasNext()
+                override fun next(): Basket = entries.next().value
+            }
+        }
+        else -> Collections.singletonList(basket).iterator()
+    }
+
+    @JvmStatic
+    fun test(predicate: (Basket) -> Boolean, basket: Basket): Boolean = predicate(basket)
+}
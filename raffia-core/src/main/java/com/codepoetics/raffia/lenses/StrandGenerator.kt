@@ -0,0 +1,246 @@
+package com.codepoetics.raffia.lenses
+
+import org.objectweb.asm.ClassWriter
+import org.objectweb.asm.Label
+import org.objectweb.asm.MethodVisitor
+import org.objectweb.asm.Opcodes.*
+import java.util.concurrent.atomic.AtomicInteger
+
+/**
+ * Generates a [GeneratedPlan] subclass for a list of strand steps, with one static method per step which calls the
+ * method for the next step directly. Key, index, slice, wildcard and conditional steps are generated inline; the first
+ * step of any other kind hands the rest of the traversal over to a [StrandPlan].
+ *
+ * Only loaded when ASM is on the classpath.
+ */
+internal object StrandGenerator {
+
+    private const val BASKET = "com/codepoetics/raffia/baskets/Basket"
+    private const val SLOT_CACHE = "com/codepoetics/raffia/baskets/SlotCache"
+    private const val SINK = "com/codepoetics/raffia/lenses/BasketSink"
+    private const val PLAN = "com/codepoetics/raffia/lenses/StrandPlan"
+    private const val SUPERCLASS = "com/codepoetics/raffia/lenses/GeneratedPlan"
+    private const val STEPS = "com/codepoetics/raffia/lenses/GeneratedSteps"
+    private const val ITERATOR = "java/util/Iterator"
+
+    private const val STEP_DESCRIPTOR = "([Ljava/lang/Object;L$BASKET;L$SINK;)Z"
+
+    // Locals of each step method.
+    private const val CONSTANTS = 0
+    private const val BASKET_ARG = 1
+    private const val SINK_ARG = 2
+    private const val ITERATOR_LOCAL = 3
+    private const val CHILD_LOCAL = 4
+
+    private val counter = AtomicInteger()
+
+    private class Loader(parent: ClassLoader) : ClassLoader(parent) {
+        fun define(name: String, bytes: ByteArray): Class<*> = defineClass(name, bytes, 0, bytes.size)
+    }
+
+    fun generate(steps: List<Strand>): GeneratedPlan {
+        val className = "$SUPERCLASS\$${counter.incrementAndGet()}"
+        val constants = ArrayList<Any?>()
+
+        val writer = ClassWriter(ClassWriter.COMPUTE_MAXS)
+        writer.visit(V1_6, ACC_PUBLIC or ACC_FINAL or ACC_SUPER, className, null, SUPERCLASS, null)
+        writeConstructor(writer)
+        writeRun(writer, className)
+
+        var index = 0
+        while (index < steps.size) {
+            val method = stepMethod(writer, index)
+            if (!writeStep(method, className, steps[index], index, constants)) {
+                constants.add(StrandPlan.of(composed(steps.subList(index, steps.size))))
+                handOff(method, constants.size - 1)
+                break
+            }
+            index++
+        }
+        if (index == steps.size) {
+            accept(stepMethod(writer, index))
+        }
+        writer.visitEnd()
+
+        val loader = Loader(StrandGenerator::class.java.classLoader)
+        val generated = loader.define(className.replace('/', '.'), writer.toByteArray())
+        return generated.getConstructor(Array<Any?>::class.java).newInstance(constants.toTypedArray()) as GeneratedPlan
+    }
+
+    private fun writeConstructor(writer: ClassWriter) {
+        val method = writer.visitMethod(ACC_PUBLIC, "<init>", "([Ljava/lang/Object;)V", null, null)
+        method.visitCode()
+        method.visitVarInsn(ALOAD, 0)
+        method.visitVarInsn(ALOAD, 1)
+        method.visitMethodInsn(INVOKESPECIAL, SUPERCLASS, "<init>", "([Ljava/lang/Object;)V", false)
+        method.visitInsn(RETURN)
+        finish(method)
+    }
+
+    private fun writeRun(writer: ClassWriter, className: String) {
+        val method = writer.visitMethod(ACC_PUBLIC, "run", "(L$BASKET;L$SINK;)Z", null, null)
+        method.visitCode()
+        method.visitVarInsn(ALOAD, 0)
+        method.visitFieldInsn(GETFIELD, SUPERCLASS, "constants", "[Ljava/lang/Object;")
+        method.visitVarInsn(ALOAD, 1)
+        method.visitVarInsn(ALOAD, 2)
+        method.visitMethodInsn(INVOKESTATIC, className, "step0", STEP_DESCRIPTOR, false)
+        method.visitInsn(IRETURN)
+        finish(method)
+    }
+
+    private fun stepMethod(writer: ClassWriter, index: Int): MethodVisitor {
+        val method = writer.visitMethod(ACC_PRIVATE or ACC_STATIC, "step$index", STEP_DESCRIPTOR, null, null)
+        method.visitCode()
+        return method
+    }
+
+    private fun finish(method: MethodVisitor) {
+        method.visitMaxs(0, 0)
+        method.visitEnd()
+    }
+
+    /**
+     * Writes the body of a step method, returning false if the step is not one which can be generated.
+     */
+    private fun writeStep(method: MethodVisitor, className: String, step: Strand, index: Int, constants: MutableList<Any?>): Boolean {
+        when (step) {
+            is KeyStrand -> if (step.keys.size == 1) {
+                constants.add(step.slotCaches[0])
+                single(method, className, index) {
+                    loadConstant(method, constants.size - 1, SLOT_CACHE)
+                    method.visitMethodInsn(INVOKESTATIC, STEPS, "property", "(L$BASKET;L$SLOT_CACHE;)L$BASKET;", false)
+                }
+            } else {
+                constants.add(step.slotCaches.toTypedArray())
+                loop(method, className, index, null) {
+                    loadConstant(method, constants.size - 1, "[L$SLOT_CACHE;")
+                    method.visitMethodInsn(INVOKESTATIC, STEPS, "properties", "(L$BASKET;[L$SLOT_CACHE;)L$ITERATOR;", false)
+                }
+            }
+
+            is IndexStrand -> if (step.indices.size == 1) {
+                single(method, className, index) {
+                    method.visitLdcInsn(step.indices[0])
+                    method.visitMethodInsn(INVOKESTATIC, STEPS, "item", "(L$BASKET;I)L$BASKET;", false)
+                }
+            } else {
+                constants.add(step.indices)
+                loop(method, className, index, null) {
+                    loadConstant(method, constants.size - 1, "[I")
+                    method.visitMethodInsn(INVOKESTATIC, STEPS, "items", "(L$BASKET;[I)L$ITERATOR;", false)
+                }
+            }
+
+            is ArraySliceStrand -> {
+                constants.add(step)
+                loop(method, className, index, null) {
+                    loadConstant(method, constants.size - 1, "com/codepoetics/raffia/lenses/ArraySliceStrand")
+                    method.visitMethodInsn(INVOKESTATIC, STEPS, "slice",
+                            "(L$BASKET;Lcom/codepoetics/raffia/lenses/ArraySliceStrand;)L$ITERATOR;", false)
+                }
+            }
+
+            is WildcardStrand -> loop(method, className, index, null) {
+                method.visitMethodInsn(INVOKESTATIC, STEPS, "children", "(L$BASKET;)L$ITERATOR;", false)
+            }
+
+            is ConditionalStrand -> {
+                constants.add(step.predicate)
+                loop(method, className, index, constants.size - 1) {
+                    method.visitMethodInsn(INVOKESTATIC, STEPS, "children", "(L$BASKET;)L$ITERATOR;", false)
+                }
+            }
+
+            else -> return false
+        }
+        finish(method)
+        return true
+    }
+
+    private fun loadConstant(method: MethodVisitor, constant: Int, type: String) {
+        method.visitVarInsn(ALOAD, CONSTANTS)
+        method.visitLdcInsn(constant)
+        method.visitInsn(AALOAD)
+        method.visitTypeInsn(CHECKCAST, type)
+    }
+
+    private fun callNext(method: MethodVisitor, className: String, index: Int, child: Int) {
+        method.visitVarInsn(ALOAD, CONSTANTS)
+        method.visitVarInsn(ALOAD, child)
+        method.visitVarInsn(ALOAD, SINK_ARG)
+        method.visitMethodInsn(INVOKESTATIC, className, "step${index + 1}", STEP_DESCRIPTOR, false)
+    }
+
+    /**
+     * A step with at most one match: the lookup leaves a basket or null on the stack.
+     */
+    private inline fun single(method: MethodVisitor, className: String, index: Int, lookup: () -> Unit) {
+        val found = Label()
+        method.visitVarInsn(ALOAD, BASKET_ARG)
+        lookup()
+        method.visitVarInsn(ASTORE, CHILD_LOCAL)
+        method.visitVarInsn(ALOAD, CHILD_LOCAL)
+        method.visitJumpInsn(IFNONNULL, found)
+        method.visitInsn(ICONST_1)
+        method.visitInsn(IRETURN)
+        method.visitLabel(found)
+        callNext(method, className, index, CHILD_LOCAL)
+        method.visitInsn(IRETURN)
+    }
+
+    /**
+     * A step with any number of matches: the lookup leaves an iterator over them on the stack. If a predicate is given,
+     * only matches which satisfy it are passed on.
+     */
+    private inline fun loop(method: MethodVisitor, className: String, index: Int, predicate: Int?, lookup: () -> Unit) {
+        val next = Label()
+        val done = Label()
+
+        method.visitVarInsn(ALOAD, BASKET_ARG)
+        lookup()
+        method.visitVarInsn(ASTORE, ITERATOR_LOCAL)
+
+        method.visitLabel(next)
+        method.visitVarInsn(ALOAD, ITERATOR_LOCAL)
+        method.visitMethodInsn(INVOKEINTERFACE, ITERATOR, "hasNext", "()Z", true)
+        method.visitJumpInsn(IFEQ, done)
+        method.visitVarInsn(ALOAD, ITERATOR_LOCAL)
+        method.visitMethodInsn(INVOKEINTERFACE, ITERATOR, "next", "()Ljava/lang/Object;", true)
+        method.visitTypeInsn(CHECKCAST, BASKET)
+        method.visitVarInsn(ASTORE, CHILD_LOCAL)
+
+        if (predicate != null) {
+            loadConstant(method, predicate, "kotlin/jvm/functions/Function1")
+            method.visitVarInsn(ALOAD, CHILD_LOCAL)
+            method.visitMethodInsn(INVOKESTATIC, STEPS, "test", "(Lkotlin/jvm/functions/Function1;L$BASKET;)Z", false)
+            method.visitJumpInsn(IFEQ, next)
+        }
+
+        callNext(method, className, index, CHILD_LOCAL)
+        method.visitJumpInsn(IFNE, next)
+        method.visitInsn(ICONST_0)
+        method.visitInsn(IRETURN)
+
+        method.visitLabel(done)
+        method.visitInsn(ICONST_1)
+        method.visitInsn(IRETURN)
+    }
+
+    private fun handOff(method: MethodVisitor, constant: Int) {
+        loadConstant(method, constant, PLAN)
+        method.visitVarInsn(ALOAD, BASKET_ARG)
+        method.visitVarInsn(ALOAD, SINK_ARG)
+        method.visitMethodInsn(INVOKEVIRTUAL, PLAN, "run", "(L$BASKET;L$SINK;)Z", false)
+        method.visitInsn(IRETURN)
+        finish(method)
+    }
+
+    private fun accept(method: MethodVisitor) {
+        method.visitVarInsn(ALOAD, SINK_ARG)
+        method.visitVarInsn(ALOAD, BASKET_ARG)
+        method.visitMethodInsn(INVOKEINTERFACE, SINK, "accept", "(L$BASKET;)Z", true)
+        method.visitInsn(IRETURN)
+        finish(method)
+    }
+}
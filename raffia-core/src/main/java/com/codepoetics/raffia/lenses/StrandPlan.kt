@@ -0,0 +1,434 @@
+package com.codepoetics.raffia.lenses
+
+import com.codepoetics.raffia.baskets.Basket
+import com.codepoetics.raffia.baskets.KeySummaries
+import com.codepoetics.raffia.baskets.ObjectEntry
+import com.codepoetics.raffia.baskets.SlotCache
+import java.util.*
+
+/**
+ * Receives the baskets matched by a strand, returning false to stop the traversal.
+ */
+interface BasketSink {
+    fun accept(basket: Basket): Boolean
+}
+
+/**
+ * A strand compiled into a flat array of steps. Running the plan walks the basket directly, pushing each match into a
+ * [BasketSink], with no intermediate sequences or iterators between steps.
+ */
+class StrandPlan private constructor(private val steps: Array<Step>) {
+
+    fun run(basket: Basket, sink: BasketSink): Boolean = run(basket, 0, sink)
+
+    /**
+     * The matches as a lazy sequence, which walks only as much of the basket as is needed to produce the matches taken
+     * from it.
+     */
+    fun matches(basket: Basket): Sequence<Basket> = object : Sequence<Basket> {
+        override fun iterator(): Iterator<Basket> = Matches(basket)
+    }
+
+    fun collect(basket: Basket): List<Basket> {
+        val results = ArrayList<Basket>()
+        run(basket, object : BasketSink {
+            override fun accept(basket: Basket): Boolean = results.add(basket)
+        })
+        return results
+    }
+
+    /**
+     * At most [limit] matches, after skipping the first [offset]. The traversal stops once it has enough, and where the
+     * last step matches every item of an array or object, items to be skipped are skipped by count without being visited.
+     */
+    fun page(basket: Basket, offset: Int, limit: Int): List<Basket> = page(offset, limit) { run(basket, it) }
+
+    /**
+     * The number of matches, counting those of a last step which matches every item of an array or object without
+     * visiting them.
+     */
+    fun count(basket: Basket): Int = Counter().apply { run(basket, this) }.count
+
+    private fun run(basket: Basket, index: Int, sink: BasketSink): Boolean {
+        if (index == steps.size) {
+            return sink.accept(basket)
+        }
+
+        val next = index + 1
+        val step = steps[index]
+        when (step) {
+            is Step.Keys -> if (basket is Basket.ObjectBasket) {
+                for (slotCache in step.slotCaches) {
+                    val value = basket.properties[slotCache] ?: continue
+                    if (!run(value, next, sink)) return false
+                }
+            }
+
+            is Step.Indices -> if (basket is Basket.ArrayBasket) {
+                val contents = basket.contents
+                val size = contents.size()
+                for (i in step.indices) {
+                    val actual = if (i < 0) size + i else i
+                    if (actual < 0 || actual >= size) continue
+                    if (skipper(next, sink)?.skip(1) == 1) continue
+                    if (!run(contents[actual], next, sink)) return false
+                }
+            }
+
+            is Step.Slice -> if (basket is Basket.ArrayBasket) {
+                val contents = basket.contents
+                val range = step.strand.sliceRange(contents.size())
+                val from = range.first + (skipper(next, sink)?.skip(Math.max(0, range.last - range.first + 1)) ?: 0)
+                for (i in from..range.last) {
+                    if (!run(contents[i], next, sink)) return false
+                }
+            }
+
+            is Step.Conditional -> when (basket) {
+                is Basket.ObjectBasket -> for (entry in basket.properties) {
+                    if (step.predicate(entry.value) && !run(entry.value, next, sink)) return false
+                }
+                is Basket.ArrayBasket -> for (item in basket.contents) {
+                    if (step.predicate(item) && !run(item, next, sink)) return false
+                }
+                else -> if (step.predicate(basket)) return run(basket, next, sink)
+            }
+
+            is Step.DeepScan -> return deepScan(basket, step, next, sink)
+
+            is Step.Wildcard -> when (basket) {
+                is Basket.ObjectBasket -> {
+                    val size = basket.properties.size()
+                    var toSkip = skipper(next, sink)?.skip(size) ?: 0
+                    if (toSkip < size) for (entry in basket.properties) {
+                        if (toSkip > 0) {
+                            toSkip--
+                            continue
+                        }
+                        if (!run(entry.value, next, sink)) return false
+                    }
+                }
+                is Basket.ArrayBasket -> {
+                    val contents = basket.contents
+                    val from = skipper(next, sink)?.skip(contents.size()) ?: 0
+                    for (i in from until contents.size()) {
+                        if (!run(contents[i], next, sink)) return false
+                    }
+                }
+                else -> return run(basket, next, sink)
+            }
+
+            is Step.DeepWildcard -> return deepWildcard(basket, step, next, sink)
+
+            is Step.Other -> for (match in step.strand[basket]) {
+                if (!run(match, next, sink)) return false
+            }
+        }
+        return true
+    }
+
+    /**
+     * The sink, if the next step passes matches straight to it and it can take them by count.
+     */
+    private fun skipper(next: Int, sink: BasketSink): SkippingSink? = if (next == steps.size && sink is SkippingSink) sink else null
+
+    private fun deepScan(basket: Basket, step: Step.DeepScan, next: Int, sink: BasketSink): Boolean {
+        for (match in DeepScanMatches(basket, step)) {
+            if (!run(match, next, sink)) return false
+        }
+        return true
+    }
+
+    private fun deepWildcard(basket: Basket, step: Step.DeepWildcard, next: Int, sink: BasketSink): Boolean {
+        for (match in DeepWildcardMatches(basket, step.maxDepth)) {
+            if (!run(match, next, sink)) return false
+        }
+        return true
+    }
+
+    /**
+     * Pulls matches through the steps with a stack of iterators, one for each step reached, each over the matches of its
+     * step in one basket.
+     */
+    private inner class Matches(basket: Basket) : AbstractIterator<Basket>() {
+        private val levels = ArrayList<Iterator<Basket>>()
+
+        init {
+            levels.add(listOf(basket).iterator())
+        }
+
+        override fun computeNext() {
+            while (!levels.isEmpty()) {
+                val level = levels.size - 1
+                val candidates = levels[level]
+                if (!candidates.hasNext()) {
+                    levels.removeAt(level)
+                    continue
+                }
+
+                val candidate = candidates.next()
+                if (level == steps.size) {
+                    setNext(candidate)
+                    return
+                }
+                levels.add(matches(steps[level], candidate))
+            }
+            done()
+        }
+    }
+
+    private fun matches(step: Step, basket: Basket): Iterator<Basket> = when (step) {
+        is Step.Keys -> if (basket is Basket.ObjectBasket) {
+            step.slotCaches.mapNotNull { basket.properties[it] }.iterator()
+        } else NONE
+
+        is Step.Indices -> if (basket is Basket.ArrayBasket) {
+            val size = basket.contents.size()
+            step.indices.map { if (it < 0) size + it else it }.filter { it in 0 until size }.map { basket.contents[it] }.iterator()
+        } else NONE
+
+        is Step.Slice -> if (basket is Basket.ArrayBasket) {
+            val range = step.strand.sliceRange(basket.contents.size())
+            object : Iterator<Basket> {
+                private var index = range.first
+                override fun hasNext(): Boolean = index <= range.last
+                override fun next(): Basket = basket.contents[index++]
+            }
+        } else NONE
+
+        is Step.Conditional -> valuesOf(basket)?.asSequence()?.filter(step.predicate)?.iterator()
+                ?: if (step.predicate(basket)) listOf(basket).iterator() else NONE
+
+        is Step.DeepScan -> DeepScanMatches(basket, step)
+
+        is Step.Wildcard -> valuesOf(basket) ?: listOf(basket).iterator()
+
+        is Step.DeepWildcard -> DeepWildcardMatches(basket, step.maxDepth)
+
+        is Step.Other -> step.strand[basket].iterator()
+    }
+
+    private fun valuesOf(basket: Basket): Iterator<Basket>? = when (basket) {
+        is Basket.ObjectBasket -> {
+            val entries = basket.properties.iterator()
+            object : Iterator<Basket> {
+                override fun hasNext(): Boolean = entries.hasNext()
+                override fun next(): Basket = entries.next().value
+            }
+        }
+        is Basket.ArrayBasket -> basket.contents.iterator()
+        else -> null
+    }
+
+    /**
+     * Scans beneath a basket for properties with the step's key, walking with an explicit stack of iterators so that
+     * the depth of nesting is limited only by the heap.
+     */
+    private class DeepScanMatches(basket: Basket, private val step: Step.DeepScan) : AbstractIterator<Basket>() {
+        private val stack = ArrayDeque<Iterator<Any>>()
+
+        init {
+            if (step.maxDepth >= 1 && mayMatchBeneath(basket)) children(basket)?.let { stack.push(it) }
+        }
+
+        override fun computeNext() {
+            while (!stack.isEmpty()) {
+                val children = stack.peek()
+                if (!children.hasNext()) {
+                    stack.pop()
+                    continue
+                }
+
+                val child = children.next()
+                if (child is ObjectEntry && child.key == step.key) {
+                    setNext(child.value)
+                    return
+                }
+                if (stack.size < step.maxDepth) {
+                    val value = if (child is ObjectEntry) child.value else child as Basket
+                    if (mayMatchBeneath(value)) children(value)?.let { stack.push(it) }
+                }
+            }
+            done()
+        }
+
+        private fun mayMatchBeneath(basket: Basket): Boolean =
+                step.keyBits == 0L || KeySummaries.mayContain(basket, step.keyBits)
+
+        private fun children(basket: Basket): Iterator<Any>? = when (basket) {
+            is Basket.ObjectBasket -> basket.properties.iterator()
+            is Basket.ArrayBasket -> basket.contents.iterator()
+            else -> null
+        }
+    }
+
+    /**
+     * Matches every value beneath a container, each container's own values before those nested within them. Each
+     * container's values are read once: they are matched, then held in [pending] until their turn to be descended into.
+     */
+    private class DeepWildcardMatches(basket: Basket, private val maxDepth: Int) : AbstractIterator<Basket>() {
+        private val pending = ArrayList<Basket>()
+        private val frames = ArrayDeque<Frame>()
+        private var single: Basket? = null
+        private var values: Iterator<Basket>? = null
+        private var keeping = false
+        private var start = 0
+
+        init {
+            if (maxDepth >= 1) {
+                if (isContainer(basket)) match(basket, maxDepth > 1) else single = basket
+            }
+        }
+
+        private fun isContainer(basket: Basket) = basket is Basket.ObjectBasket || basket is Basket.ArrayBasket
+
+        private fun match(container: Basket, keep: Boolean) {
+            values = if (container is Basket.ObjectBasket) {
+                container.properties.map { it.value }.iterator()
+            } else {
+                container.asArray().iterator()
+            }
+            keeping = keep
+            start = pending.size
+        }
+
+        override fun computeNext() {
+            single?.let {
+                single = null
+                setNext(it)
+                return
+            }
+
+            while (true) {
+                val values = values
+                if (values != null) {
+                    if (values.hasNext()) {
+                        val value = values.next()
+                        if (keeping) pending.add(value)
+                        setNext(value)
+                        return
+                    }
+                    this.values = null
+                    if (keeping) frames.push(Frame(start, pending.size))
+                    continue
+                }
+
+                val frame = frames.peek() ?: return done()
+                if (frame.position == frame.end) {
+                    frames.pop()
+                    pending.subList(frame.start, pending.size).clear()
+                    continue
+                }
+
+                val child = pending[frame.position++]
+                if (isContainer(child)) {
+                    match(child, frames.size + 1 < maxDepth)
+                } else {
+                    setNext(child)
+                    return
+                }
+            }
+        }
+    }
+
+    /**
+     * A range of pending values, with the position of the next to descend into.
+     */
+    private class Frame(val start: Int, val end: Int) {
+        var position = start
+    }
+
+    /**
+     * A sink which can pass over matches by count, without their being visited.
+     */
+    internal interface SkippingSink : BasketSink {
+        /**
+         * Passes over up to [available] matches, returning how many it passed over.
+         */
+        fun skip(available: Int): Int
+    }
+
+    /**
+     * Skips the first matches it is given, then collects matches until it has enough.
+     */
+    internal class Page(private var toSkip: Int, private val limit: Int) : SkippingSink {
+        val results = ArrayList<Basket>()
+
+        override fun skip(available: Int): Int {
+            val count = Math.min(toSkip, available)
+            toSkip -= count
+            return count
+        }
+
+        override fun accept(basket: Basket): Boolean {
+            if (toSkip > 0) {
+                skip(1)
+                return true
+            }
+            results.add(basket)
+            return results.size < limit
+        }
+    }
+
+    internal class Counter : SkippingSink {
+        var count = 0
+            private set
+
+        override fun skip(available: Int): Int {
+            count += available
+            return available
+        }
+
+        override fun accept(basket: Basket): Boolean {
+            count++
+            return true
+        }
+    }
+
+    private sealed class Step {
+        class Keys(val slotCaches: List<SlotCache>) : Step()
+        class Indices(val indices: IntArray) : Step()
+        class Slice(val strand: ArraySliceStrand) : Step()
+        class Conditional(val predicate: (Basket) -> Boolean) : Step()
+        class DeepScan(val key: String, val maxDepth: Int, val keyBits: Long) : Step()
+        object Wildcard : Step()
+        class DeepWildcard(val maxDepth: Int) : Step()
+        class Other(val strand: Strand) : Step()
+    }
+
+    companion object {
+
+        private val NONE: Iterator<Basket> = emptyList<Basket>().iterator()
+
+        /**
+         * Runs a traversal into a [Page], so that it can stop as soon as the page is full.
+         */
+        internal fun page(offset: Int, limit: Int, traversal: (BasketSink) -> Unit): List<Basket> {
+            if (offset < 0 || limit < 0) {
+                throw IllegalArgumentException("Offset and limit must not be negative")
+            }
+            if (limit == 0) {
+                return emptyList()
+            }
+            val page = Page(offset, limit)
+            traversal(page)
+            return page.results
+        }
+
+        @JvmStatic
+        fun of(strand: Strand): StrandPlan = StrandPlan(strand.steps().map(this::compile).toTypedArray())
+
+        private fun compile(step: Strand): Step = when (step) {
+            is KeyStrand -> Step.Keys(step.slotCaches)
+            is IndexStrand -> Step.Indices(step.indices)
+            is ArraySliceStrand -> Step.Slice(step)
+            is ConditionalStrand -> Step.Conditional(step.predicate)
+            is DeepScanStrand -> Step.DeepScan(step.key, step.maxDepth,
+                    if (step.usingKeySummaries) KeySummaries.bitsOf(step.key) else 0L)
+            is WildcardStrand -> Step.Wildcard
+            is DeepWildcardStrand -> Step.DeepWildcard(Descendants.UNBOUNDED)
+            is BoundedDeepWildcardStrand -> Step.DeepWildcard(step.maxDepth)
+            else -> Step.Other(step)
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package com.codepoetics.raffia.lenses
+
+import com.codepoetics.raffia.baskets.ArrayContents
+import com.codepoetics.raffia.baskets.Basket
+import com.codepoetics.raffia.baskets.ObjectEntry
+import java.util.*
+import java.util.function.Consumer
+
+/**
+ * Splits the matches of a strand by ranges of the first array or object it fans out over: a wildcard, conditional,
+ * slice or unbounded deep scan step reached through single keys and indices. Each range's matches are found only as the range is
+ * consumed. Where every item in the range is itself a match, the spliterator is sized.
+ *
+ * Strands which do not have that shape are streamed from their sequence of matches, unsized.
+ */
+internal class StrandSpliterator private constructor(
+        private val fanOut: FanOut,
+        private var index: Int,
+        private val end: Int) : Spliterator<Basket> {
+
+    private val pending = ArrayDeque<Basket>()
+
+    private val buffer = object : BasketSink {
+        override fun accept(basket: Basket): Boolean {
+            pending.add(basket)
+            return true
+        }
+    }
+
+    override fun tryAdvance(action: Consumer<in Basket>): Boolean {
+        while (pending.isEmpty() && index < end) {
+            fanOut.expand(index++, buffer)
+        }
+        val next = pending.poll() ?: return false
+        action.accept(next)
+        return true
+    }
+
+    override fun forEachRemaining(action: Consumer<in Basket>) {
+        while (!pending.isEmpty()) {
+            action.accept(pending.poll())
+        }
+        val sink = object : BasketSink {
+            override fun accept(basket: Basket): Boolean {
+                action.accept(basket)
+                return true
+            }
+        }
+        while (index < end) {
+            fanOut.expand(index++, sink)
+        }
+    }
+
+    override fun trySplit(): Spliterator<Basket>? {
+        if (!pending.isEmpty() || end - index < 2) {
+            return null
+        }
+        val start = index
+        index += (end - index) / 2
+        return StrandSpliterator(fanOut, start, index)
+    }
+
+    override fun estimateSize(): Long = (end - index + pending.size).toLong()
+
+    override fun characteristics(): Int =
+            Spliterator.ORDERED or Spliterator.NONNULL or Spliterator.IMMUTABLE or
+                    (if (fanOut.sized) Spliterator.SIZED or Spliterator.SUBSIZED else 0)
+
+    /**
+     * The step which fans out over the items of a container, and the steps which follow it.
+     */
+    private class FanOut(container: Basket, private val steps: List<Strand>, private val stepIndex: Int) {
+        private val step = steps[stepIndex]
+        private val items: ArrayContents? = if (container is Basket.ArrayBasket) container.contents else null
+        private val entries: List<ObjectEntry>? = if (container is Basket.ObjectBasket) container.properties.toList() else null
+
+        private val rest: StrandPlan = StrandPlan.of(composed(steps.subList(stepIndex + 1, steps.size)))
+        private val scan: StrandPlan by lazy { StrandPlan.of(composed(steps.subList(stepIndex, steps.size))) }
+
+        val range: IntRange = when {
+            items != null && items.size() == 0 -> IntRange.EMPTY
+            step is ArraySliceStrand -> step.sliceRange(items!!.size())
+            else -> 0 until (items?.size() ?: entries!!.size)
+        }
+
+        val sized: Boolean = stepIndex == steps.size - 1 && (step is WildcardStrand || step is ArraySliceStrand)
+
+        fun expand(index: Int, sink: BasketSink) {
+            val value = if (items != null) items[index] else entries!![index].value
+            when (step) {
+                is ConditionalStrand -> if (step.predicate(value)) rest.run(value, sink)
+                is DeepScanStrand -> if (entries != null && entries[index].key == step.key) rest.run(value, sink) else scan.run(value, sink)
+                else -> rest.run(value, sink)
+            }
+        }
+    }
+
+    companion object {
+
+        fun of(strand: Strand, basket: Basket): Spliterator<Basket> {
+            val steps = strand.steps()
+            var current = basket
+            for ((stepIndex, step) in steps.withIndex()) {
+                when {
+                    step is KeyStrand && step.keys.size == 1 || step is IndexStrand && step.indices.size == 1 ->
+                        current = step[current].firstOrNull() ?: return Spliterators.emptySpliterator()
+                    !fansOut(step, current) -> return unsplit(strand, basket)
+                    else -> {
+                        val fanOut = FanOut(current, steps, stepIndex)
+                        if (fanOut.range.isEmpty()) return Spliterators.emptySpliterator()
+                        return StrandSpliterator(fanOut, fanOut.range.first, fanOut.range.last + 1)
+                    }
+                }
+            }
+            return Spliterators.spliterator<Basket>(arrayOf<Any>(current), Spliterator.ORDERED or Spliterator.NONNULL or Spliterator.IMMUTABLE)
+        }
+
+        private fun fansOut(step: Strand, container: Basket): Boolean = when (step) {
+            is DeepScanStrand -> step.maxDepth == Descendants.UNBOUNDED && (container is Basket.ArrayBasket || container is Basket.ObjectBasket)
+            is WildcardStrand, is ConditionalStrand -> container is Basket.ArrayBasket || container is Basket.ObjectBasket
+            is ArraySliceStrand -> container is Basket.ArrayBasket
+            else -> false
+        }
+
+        private fun unsplit(strand: Strand, basket: Basket): Spliterator<Basket> =
+                Spliterators.spliteratorUnknownSize(strand[basket].iterator(), Spliterator.ORDERED or Spliterator.NONNULL)
+    }
+}
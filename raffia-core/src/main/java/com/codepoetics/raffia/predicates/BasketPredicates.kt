@@ -45,9 +45,7 @@ object BasketPredicates {
     }
 
     @JvmStatic
-    fun isNumber(expected: BigDecimal): BasketPredicate =  { basket ->
-        basket.isNumber() && basket.asNumber() == expected
-    }
+    fun isNumber(expected: BigDecimal): BasketPredicate = isNumber(NumberPredicates.isEqualTo(expected))
 
     @JvmStatic
     fun isString(matcher: ValuePredicate<String>): BasketPredicate =  { basket ->
@@ -55,9 +53,9 @@ object BasketPredicates {
     }
 
     @JvmStatic
-    fun isNumber(matcher: ValuePredicate<BigDecimal>): BasketPredicate =  { basket ->
-        basket.isNumber() && matcher(basket.asNumber())
-    }
+    fun isNumber(matcher: ValuePredicate<BigDecimal>): BasketPredicate =
+        if (matcher is NumberComparison) { basket -> basket is Basket.NumberBasket && matcher.test(basket) }
+        else { basket -> basket.isNumber() && matcher(basket.asNumber()) }
 
     @JvmStatic
     fun isBoolean(expected: Boolean): BasketPredicate =  { basket ->
@@ -0,0 +1,33 @@
+package com.codepoetics.raffia.predicates
+
+import com.codepoetics.raffia.baskets.Basket
+import java.math.BigDecimal
+
+/**
+ * A comparison against a constant number, which can be tested directly against a number basket without converting
+ * either side to [BigDecimal].
+ */
+internal class NumberComparison(
+        private val operand: Basket.NumberBasket,
+        private val comparison: Comparison) : ValuePredicate<BigDecimal> {
+
+    enum class Comparison {
+        EQUAL,
+        GREATER,
+        LESS,
+        GREATER_OR_EQUAL,
+        LESS_OR_EQUAL
+    }
+
+    fun test(basket: Basket.NumberBasket): Boolean = accepts(basket.compareTo(operand))
+
+    override fun invoke(input: BigDecimal): Boolean = accepts(input.compareTo(operand.numberValue))
+
+    private fun accepts(comparisonResult: Int): Boolean = when (comparison) {
+        Comparison.EQUAL -> comparisonResult == 0
+        Comparison.GREATER -> comparisonResult > 0
+        Comparison.LESS -> comparisonResult < 0
+        Comparison.GREATER_OR_EQUAL -> comparisonResult >= 0
+        Comparison.LESS_OR_EQUAL -> comparisonResult <= 0
+    }
+}
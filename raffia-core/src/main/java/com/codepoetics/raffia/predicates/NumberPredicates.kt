@@ -1,81 +1,91 @@
 package com.codepoetics.raffia.predicates
 
+import com.codepoetics.raffia.baskets.Basket
+import com.codepoetics.raffia.predicates.NumberComparison.Comparison
 import java.math.BigDecimal
 
 object NumberPredicates {
 
     @JvmStatic
-    fun isEqualTo(other: Int): ValuePredicate<BigDecimal> = isEqualTo(BigDecimal.valueOf(other.toLong()))
+    fun isEqualTo(other: Int): ValuePredicate<BigDecimal> = isEqualTo(other.toLong())
 
     @JvmStatic
-    fun isEqualTo(other: Long): ValuePredicate<BigDecimal> = isEqualTo(BigDecimal.valueOf(other))
+    fun isEqualTo(other: Long): ValuePredicate<BigDecimal> = compare(Basket.NumberBasket.LongNumber(other), Comparison.EQUAL)
 
     @JvmStatic
-    fun isEqualTo(other: Double): ValuePredicate<BigDecimal> = isEqualTo(BigDecimal.valueOf(other))
+    fun isEqualTo(other: Double): ValuePredicate<BigDecimal> = compare(checked(other), Comparison.EQUAL)
 
     @JvmStatic
     fun isEqualTo(other: String): ValuePredicate<BigDecimal> = isEqualTo(BigDecimal(other))
 
     @JvmStatic
-    fun isEqualTo(other: BigDecimal): ValuePredicate<BigDecimal> = { input -> input == other }
+    fun isEqualTo(other: BigDecimal): ValuePredicate<BigDecimal> = compare(Basket.NumberBasket.of(other), Comparison.EQUAL)
 
     @JvmStatic
-    fun isGreaterThan(other: Int): ValuePredicate<BigDecimal> = isGreaterThan(BigDecimal.valueOf(other.toLong()))
+    fun isGreaterThan(other: Int): ValuePredicate<BigDecimal> = isGreaterThan(other.toLong())
 
     @JvmStatic
-    fun isGreaterThan(other: Long): ValuePredicate<BigDecimal> = isGreaterThan(BigDecimal.valueOf(other))
+    fun isGreaterThan(other: Long): ValuePredicate<BigDecimal> = compare(Basket.NumberBasket.LongNumber(other), Comparison.GREATER)
 
     @JvmStatic
-    fun isGreaterThan(other: Double): ValuePredicate<BigDecimal> = isGreaterThan(BigDecimal.valueOf(other))
+    fun isGreaterThan(other: Double): ValuePredicate<BigDecimal> = compare(checked(other), Comparison.GREATER)
 
     @JvmStatic
     fun isGreaterThan(other: String): ValuePredicate<BigDecimal> = isGreaterThan(BigDecimal(other))
 
     @JvmStatic
-    fun isGreaterThan(other: BigDecimal): ValuePredicate<BigDecimal> = { input -> input > other }
+    fun isGreaterThan(other: BigDecimal): ValuePredicate<BigDecimal> = compare(Basket.NumberBasket.of(other), Comparison.GREATER)
 
     @JvmStatic
-    fun isLessThan(other: Int): ValuePredicate<BigDecimal> = isLessThan(BigDecimal.valueOf(other.toLong()))
+    fun isLessThan(other: Int): ValuePredicate<BigDecimal> = isLessThan(other.toLong())
 
     @JvmStatic
-    fun isLessThan(other: Long): ValuePredicate<BigDecimal> = isLessThan(BigDecimal.valueOf(other))
+    fun isLessThan(other: Long): ValuePredicate<BigDecimal> = compare(Basket.NumberBasket.LongNumber(other), Comparison.LESS)
 
     @JvmStatic
-    fun isLessThan(other: Double): ValuePredicate<BigDecimal> = isLessThan(BigDecimal.valueOf(other))
+    fun isLessThan(other: Double): ValuePredicate<BigDecimal> = compare(checked(other), Comparison.LESS)
 
     @JvmStatic
     fun isLessThan(other: String): ValuePredicate<BigDecimal> = isLessThan(BigDecimal(other))
 
     @JvmStatic
-    fun isLessThan(other: BigDecimal): ValuePredicate<BigDecimal> = { input -> input < other }
+    fun isLessThan(other: BigDecimal): ValuePredicate<BigDecimal> = compare(Basket.NumberBasket.of(other), Comparison.LESS)
 
     @JvmStatic
-    fun isGreaterThanOrEqualTo(other: Int): ValuePredicate<BigDecimal> = isGreaterThanOrEqualTo(BigDecimal.valueOf(other.toLong()))
+    fun isGreaterThanOrEqualTo(other: Int): ValuePredicate<BigDecimal> = isGreaterThanOrEqualTo(other.toLong())
 
     @JvmStatic
-    fun isGreaterThanOrEqualTo(other: Long): ValuePredicate<BigDecimal> = isGreaterThanOrEqualTo(BigDecimal.valueOf(other))
+    fun isGreaterThanOrEqualTo(other: Long): ValuePredicate<BigDecimal> = compare(Basket.NumberBasket.LongNumber(other), Comparison.GREATER_OR_EQUAL)
 
     @JvmStatic
-    fun isGreaterThanOrEqualTo(other: Double): ValuePredicate<BigDecimal> = isGreaterThanOrEqualTo(BigDecimal.valueOf(other))
+    fun isGreaterThanOrEqualTo(other: Double): ValuePredicate<BigDecimal> = compare(checked(other), Comparison.GREATER_OR_EQUAL)
 
     @JvmStatic
     fun isGreaterThanOrEqualTo(other: String): ValuePredicate<BigDecimal> = isGreaterThanOrEqualTo(BigDecimal(other))
 
     @JvmStatic
-    fun isGreaterThanOrEqualTo(other: BigDecimal): ValuePredicate<BigDecimal> = { input -> input >= other }
+    fun isGreaterThanOrEqualTo(other: BigDecimal): ValuePredicate<BigDecimal> = compare(Basket.NumberBasket.of(other), Comparison.GREATER_OR_EQUAL)
 
     @JvmStatic
-    fun isLessThanOrEqualTo(other: Int): ValuePredicate<BigDecimal> = isLessThanOrEqualTo(BigDecimal.valueOf(other.toLong()))
+    fun isLessThanOrEqualTo(other: Int): ValuePredicate<BigDecimal> = isLessThanOrEqualTo(other.toLong())
 
     @JvmStatic
-    fun isLessThanOrEqualTo(other: Long): ValuePredicate<BigDecimal> = isLessThanOrEqualTo(BigDecimal.valueOf(other))
+    fun isLessThanOrEqualTo(other: Long): ValuePredicate<BigDecimal> = compare(Basket.NumberBasket.LongNumber(other), Comparison.LESS_OR_EQUAL)
 
     @JvmStatic
-    fun isLessThanOrEqualTo(other: Double): ValuePredicate<BigDecimal> = isLessThanOrEqualTo(BigDecimal.valueOf(other))
+    fun isLessThanOrEqualTo(other: Double): ValuePredicate<BigDecimal> = compare(checked(other), Comparison.LESS_OR_EQUAL)
 
     @JvmStatic
     fun isLessThanOrEqualTo(other: String): ValuePredicate<BigDecimal> = isLessThanOrEqualTo(BigDecimal(other))
 
     @JvmStatic
-    fun isLessThanOrEqualTo(other: BigDecimal): ValuePredicate<BigDecimal> = { input -> input <= other }
+    fun isLessThanOrEqualTo(other: BigDecimal): ValuePredicate<BigDecimal> = compare(Basket.NumberBasket.of(other), Comparison.LESS_OR_EQUAL)
+
+    /**
+     * Goes through [Basket.ofNumber], so that a non-finite operand is rejected as it would be anywhere else.
+     */
+    private fun checked(value: Double): Basket.NumberBasket = Basket.ofNumber(value) as Basket.NumberBasket
+
+    private fun compare(operand: Basket.NumberBasket, comparison: Comparison): ValuePredicate<BigDecimal> =
+            NumberComparison(operand, comparison)
 }
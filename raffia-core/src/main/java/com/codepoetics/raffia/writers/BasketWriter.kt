@@ -14,6 +14,8 @@ interface BasketWriter<T : BasketWriter<T>> {
 
     fun add(value: String): T
     fun add(value: BigDecimal): T
+    fun add(value: Long): T = add(BigDecimal.valueOf(value))
+    fun add(value: Double): T = add(BigDecimal.valueOf(value))
     fun add(value: Boolean): T
     fun addNull(): T
 
@@ -26,7 +28,9 @@ interface BasketWeavingWriter : BasketWriter<BasketWeavingWriter> {
 
 fun <T : BasketWriter<T>> Basket.writeTo(writer: BasketWriter<T>): T = when(this) {
     is Basket.StringBasket -> writer.add(stringValue)
-    is Basket.NumberBasket -> writer.add(numberValue)
+    is Basket.NumberBasket.LongNumber -> writer.add(longValue)
+    is Basket.NumberBasket.DoubleNumber -> writer.add(doubleValue)
+    is Basket.NumberBasket.DecimalNumber -> writer.add(numberValue)
     is Basket.TrueBasket -> writer.add(true)
     is Basket.FalseBasket -> writer.add(false)
     is Basket.NullBasket -> writer.addNull()
@@ -20,6 +20,10 @@ abstract class PassThroughWriter<T : BasketWriter<T>, S : PassThroughWriter<T, S
 
     override fun add(value: BigDecimal): S = with(state.add(value))
 
+    override fun add(value: Long): S = with(state.add(value))
+
+    override fun add(value: Double): S = with(state.add(value))
+
     override fun add(value: Boolean): S = with(state.add(value))
 
     override fun addNull(): S = with(state.addNull())
@@ -2,6 +2,8 @@ package com.codepoetics.raffia.writers
 
 import com.codepoetics.raffia.baskets.ArrayContents
 import com.codepoetics.raffia.baskets.Basket
+import com.codepoetics.raffia.baskets.BasketInterner
+import com.codepoetics.raffia.baskets.KeyDictionary
 import com.codepoetics.raffia.baskets.ObjectEntry
 import com.codepoetics.raffia.baskets.PropertySet
 import org.pcollections.PVector
@@ -18,13 +20,20 @@ object Writers {
 
     @JvmStatic
     fun weavingTransient(): BasketWeavingWriter {
-        return TransientValueWeaver(null)
+        return TransientValueWeaver(null, { it })
+    }
+
+    @JvmStatic
+    fun weavingTransient(interner: BasketInterner): BasketWeavingWriter {
+        return TransientValueWeaver(null, interner::intern)
     }
 }
 
 private abstract class ScalarPromotingWeaver internal constructor() : BasketWeavingWriter {
     override fun add(value: String): BasketWeavingWriter = add(Basket.ofString(value))
     override fun add(value: BigDecimal): BasketWeavingWriter = add(Basket.ofNumber(value))
+    override fun add(value: Long): BasketWeavingWriter = add(Basket.ofNumber(value))
+    override fun add(value: Double): BasketWeavingWriter = add(Basket.ofNumber(value))
     override fun add(value: Boolean): BasketWeavingWriter = add(Basket.ofBoolean(value))
     override fun addNull(): BasketWeavingWriter = add(Basket.ofNull())
 }
@@ -57,7 +66,12 @@ private class PersistentValueWeaver(private val value: Basket?) : ScalarPromotin
     }
 }
 
-private class TransientValueWeaver(var value: Basket?) : ScalarPromotingWeaver() {
+private class TransientValueWeaver(var value: Basket?, val canonical: (Basket) -> Basket) : ScalarPromotingWeaver() {
+
+    override fun add(value: String): BasketWeavingWriter = add(canonical(Basket.ofString(value)))
+    override fun add(value: BigDecimal): BasketWeavingWriter = add(canonical(Basket.ofNumber(value)))
+    override fun add(value: Long): BasketWeavingWriter = add(canonical(Basket.ofNumber(value)))
+    override fun add(value: Double): BasketWeavingWriter = add(canonical(Basket.ofNumber(value)))
 
     override fun add(basket: Basket): ScalarPromotingWeaver {
         if (value == null) {
@@ -74,11 +88,11 @@ private class TransientValueWeaver(var value: Basket?) : ScalarPromotingWeaver()
 
 
     override fun beginObject(): BasketWeavingWriter {
-        return TransientObjectWeaver(this, null, mutableListOf())
+        return TransientObjectWeaver(this, null, mutableListOf(), canonical)
     }
 
     override fun beginArray(): BasketWeavingWriter {
-        return TransientArrayWeaver(this, mutableListOf())
+        return TransientArrayWeaver(this, mutableListOf(), canonical)
     }
 
     override fun end(): BasketWeavingWriter {
@@ -109,20 +123,26 @@ private class PersistentArrayWeaver(
 
 private class TransientArrayWeaver(
         val parent: ScalarPromotingWeaver,
-        val contents: MutableList<Basket>) : ScalarPromotingWeaver() {
+        val contents: MutableList<Basket>,
+        val canonical: (Basket) -> Basket) : ScalarPromotingWeaver() {
 
     override fun add(basket: Basket): ScalarPromotingWeaver {
         contents.add(basket)
         return this
     }
 
-    override fun weave(): Basket = Basket.ofArray(contents)
+    override fun add(value: String): BasketWeavingWriter = add(canonical(Basket.ofString(value)))
+    override fun add(value: BigDecimal): BasketWeavingWriter = add(canonical(Basket.ofNumber(value)))
+    override fun add(value: Long): BasketWeavingWriter = add(canonical(Basket.ofNumber(value)))
+    override fun add(value: Double): BasketWeavingWriter = add(canonical(Basket.ofNumber(value)))
+
+    override fun weave(): Basket = canonical(Basket.ofArray(contents))
 
-    override fun beginObject(): BasketWeavingWriter = TransientObjectWeaver(this, null, mutableListOf())
+    override fun beginObject(): BasketWeavingWriter = TransientObjectWeaver(this, null, mutableListOf(), canonical)
 
     override fun end(): BasketWeavingWriter = parent.add(weave())
 
-    override fun beginArray(): BasketWeavingWriter = TransientArrayWeaver(this, mutableListOf<Basket>())
+    override fun beginArray(): BasketWeavingWriter = TransientArrayWeaver(this, mutableListOf<Basket>(), canonical)
 
     override fun key(key: String): BasketWeavingWriter = throw IllegalStateException("key() called while writing array")
 }
@@ -147,14 +167,15 @@ private class PersistentObjectWeaver(
         else throw IllegalStateException("beginArray() called while writing object, but key not given")
 
     override fun key(key: String): BasketWeavingWriter =
-        if (this.key == null) PersistentObjectWeaver(parent, key, contents)
+        if (this.key == null) PersistentObjectWeaver(parent, KeyDictionary.intern(key), contents)
         else throw IllegalStateException("key() called, but key already set")
 }
 
 private class TransientObjectWeaver(
         val parent: ScalarPromotingWeaver,
         var key: String?,
-        val contents: MutableList<ObjectEntry>) : ScalarPromotingWeaver() {
+        val contents: MutableList<ObjectEntry>,
+        val canonical: (Basket) -> Basket) : ScalarPromotingWeaver() {
 
     override fun add(basket: Basket): ScalarPromotingWeaver {
         if (key == null) throw IllegalStateException("add() called while writing object, but key not given")
@@ -163,19 +184,24 @@ private class TransientObjectWeaver(
         return this
     }
 
-    override fun weave(): Basket = Basket.ofObject(PropertySet.of(contents))
+    override fun add(value: String): BasketWeavingWriter = add(canonical(Basket.ofString(value)))
+    override fun add(value: BigDecimal): BasketWeavingWriter = add(canonical(Basket.ofNumber(value)))
+    override fun add(value: Long): BasketWeavingWriter = add(canonical(Basket.ofNumber(value)))
+    override fun add(value: Double): BasketWeavingWriter = add(canonical(Basket.ofNumber(value)))
+
+    override fun weave(): Basket = canonical(Basket.ofObject(PropertySet.of(contents)))
 
-    override fun beginObject(): BasketWeavingWriter = TransientObjectWeaver(this, null, mutableListOf())
+    override fun beginObject(): BasketWeavingWriter = TransientObjectWeaver(this, null, mutableListOf(), canonical)
 
     override fun end(): BasketWeavingWriter = parent.add(weave())
 
     override fun beginArray(): BasketWeavingWriter =
-            if (key != null) TransientArrayWeaver(this, mutableListOf())
+            if (key != null) TransientArrayWeaver(this, mutableListOf(), canonical)
             else throw IllegalStateException("beginArray() called while writing object, but key not given")
 
     override fun key(key: String): BasketWeavingWriter {
         if (this.key != null) throw IllegalStateException("key() called, but key already set")
-        this.key = key
+        this.key = KeyDictionary.intern(key)
         return this
     }
 }
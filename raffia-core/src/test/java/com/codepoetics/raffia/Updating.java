@@ -83,4 +83,27 @@ public class Updating {
         equalTo("Hallucinogenic Adventures vol. 13"));
   }
 
+  @Test
+  public void updatesWhichChangeNothingReturnTheSameBasket() {
+    Function1<Basket, Basket> unchanged = Updaters.INSTANCE.getNO_OP();
+
+    for (String path : new String[] { "$..author", "$..book[*]", "$.store.*", "$.store.book[0:2]", "$.store.book[1].title", "$..missing" }) {
+      assertThat(path, strand(path).update(store, unchanged), sameInstance(store));
+    }
+    assertThat(strand("$").toEverything().update(store, unchanged), sameInstance(store));
+    assertThat(strand("$..book[?]", strand("$..author").matches("Nobody")).update(store, capitaliseString), sameInstance(store));
+  }
+
+  @Test
+  public void unchangedSiblingsAreSharedByReference() {
+    Basket updated = strand("$..book[?].title", strand("$..author").matches("Nigel Rees"))
+        .update(store, Setters.toString("Hallucinogenic Adventures vol. 13"));
+
+    assertThat(strand("$.store.bicycle").getSingle(updated), sameInstance(strand("$.store.bicycle").getSingle(store)));
+    assertThat(strand("$.store.book[1]").getSingle(updated), sameInstance(strand("$.store.book[1]").getSingle(store)));
+
+    Basket capitalised = strand("$..category").update(store, capitaliseString);
+    assertThat(strand("$.store.bicycle").getSingle(capitalised), sameInstance(strand("$.store.bicycle").getSingle(store)));
+  }
+
 }
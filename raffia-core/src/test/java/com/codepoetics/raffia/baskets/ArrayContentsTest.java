@@ -0,0 +1,107 @@
+package com.codepoetics.raffia.baskets;
+
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ArrayContentsTest {
+
+  private static final int SIZE = 40000;
+
+  private static Basket item(int i) {
+    return Basket.ofNumber(BigDecimal.valueOf(i));
+  }
+
+  private static List<Basket> items(int size) {
+    List<Basket> items = new ArrayList<>(size);
+    for (int i = 0; i < size; i++) {
+      items.add(item(i));
+    }
+    return items;
+  }
+
+  @Test
+  public void appendingMatchesBulkConstruction() {
+    ArrayContents appended = ArrayContents.empty();
+    for (int i = 0; i < SIZE; i++) {
+      appended = appended.plus(item(i));
+    }
+
+    ArrayContents bulk = ArrayContents.of(items(SIZE));
+
+    assertEquals(SIZE, appended.size());
+    assertEquals(bulk, appended);
+    assertEquals(bulk.hashCode(), appended.hashCode());
+    assertEquals(items(SIZE).hashCode(), appended.hashCode());
+  }
+
+  @Test
+  public void indexedAccess() {
+    ArrayContents contents = ArrayContents.of(items(SIZE));
+
+    for (int i = 0; i < SIZE; i++) {
+      assertEquals(item(i), contents.get(i));
+    }
+  }
+
+  @Test
+  public void iteration() {
+    ArrayContents contents = ArrayContents.of(items(SIZE));
+
+    int i = 0;
+    for (Basket basket : contents) {
+      assertEquals(item(i++), basket);
+    }
+    assertEquals(SIZE, i);
+  }
+
+  @Test
+  public void replacementLeavesOriginalUnchanged() {
+    ArrayContents original = ArrayContents.of(items(SIZE));
+    ArrayContents updated = original;
+    for (int i = 0; i < SIZE; i += 97) {
+      updated = updated.with(i, Basket.ofString("replaced"));
+    }
+
+    for (int i = 0; i < SIZE; i++) {
+      assertEquals(item(i), original.get(i));
+      assertEquals(i % 97 == 0 ? Basket.ofString("replaced") : item(i), updated.get(i));
+    }
+  }
+
+  @Test
+  public void removingFromTheEnd() {
+    ArrayContents contents = ArrayContents.of(items(SIZE));
+    for (int i = SIZE - 1; i >= 0; i--) {
+      contents = contents.minus(i);
+      assertEquals(i, contents.size());
+      if (i > 0) {
+        assertEquals(item(i - 1), contents.get(i - 1));
+      }
+    }
+    assertTrue(contents.isEmpty());
+  }
+
+  @Test
+  public void insertingAndRemovingInTheMiddle() {
+    ArrayContents contents = ArrayContents.of(items(100));
+
+    ArrayContents inserted = contents.plus(50, Basket.ofString("inserted"));
+    assertEquals(101, inserted.size());
+    assertEquals(item(49), inserted.get(49));
+    assertEquals(Basket.ofString("inserted"), inserted.get(50));
+    assertEquals(item(50), inserted.get(51));
+
+    assertEquals(contents, inserted.minus(50));
+  }
+
+  @Test(expected = IndexOutOfBoundsException.class)
+  public void outOfBoundsAccess() {
+    ArrayContents.of(items(10)).get(10);
+  }
+}
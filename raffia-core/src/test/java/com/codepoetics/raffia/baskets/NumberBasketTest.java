@@ -1,6 +1,8 @@
 package com.codepoetics.raffia.baskets;
 
 import kotlin.jvm.functions.Function1;
+import com.codepoetics.raffia.predicates.BasketPredicates;
+import com.codepoetics.raffia.predicates.NumberPredicates;
 import org.junit.Test;
 
 import java.math.BigDecimal;
@@ -71,4 +73,99 @@ public class NumberBasketTest {
   public void stringRepresentation() {
     assertEquals("<3.14>", unit.toString());
   }
+
+  @Test
+  public void equalityAndHashcodeAcrossRepresentations() {
+    assertEquals(Basket.ofNumber(42L), Basket.ofNumber(new BigDecimal("42")));
+    assertEquals(Basket.ofNumber(42L).hashCode(), Basket.ofNumber(new BigDecimal("42.00")).hashCode());
+    assertEquals(Basket.ofNumber(42L), Basket.ofNumber(42.0));
+    assertEquals(Basket.ofNumber(42L).hashCode(), Basket.ofNumber(42.0).hashCode());
+
+    assertEquals(Basket.ofNumber(3.14), unit);
+    assertEquals(Basket.ofNumber(3.14).hashCode(), unit.hashCode());
+
+    assertFalse(Basket.ofNumber(3.14).equals(Basket.ofNumber(3L)));
+    assertFalse(Basket.ofNumber(Long.MAX_VALUE).equals(Basket.ofNumber(Long.MAX_VALUE - 1)));
+  }
+
+  @Test
+  public void primitiveValuesConvertToDecimals() {
+    assertEquals(new BigDecimal("12"), Basket.ofNumber(12L).asNumber());
+    assertEquals(new BigDecimal("8.95"), Basket.ofNumber(8.95).asNumber());
+    assertEquals("<8.95>", Basket.ofNumber(8.95).toString());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsNonFiniteDoubles() {
+    Basket.ofNumber(Double.NaN);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void predicatesRejectNonFiniteDoubles() {
+    NumberPredicates.isLessThan(Double.POSITIVE_INFINITY);
+  }
+
+  @Test
+  public void largeLongsAndDoublesCompareExactly() {
+    Basket twoToTheSixty = Basket.ofNumber(Math.pow(2, 60));
+
+    assertEquals(Basket.ofNumber(1152921504606846980L), twoToTheSixty);
+    assertFalse(Basket.ofNumber(1152921504606846981L).equals(twoToTheSixty));
+    assertFalse(Basket.ofNumber(Long.MAX_VALUE).equals(Basket.ofNumber(Long.MAX_VALUE - 1)));
+  }
+
+  @Test
+  public void equalityIsTransitiveAcrossRepresentations() {
+    Basket[] numbers = {
+        Basket.ofNumber(1L << 60),
+        Basket.ofNumber(Math.pow(2, 60)),
+        Basket.ofNumber(new BigDecimal("1152921504606846976")),
+        Basket.ofNumber(new BigDecimal("1152921504606846980")),
+        Basket.ofNumber(new BigDecimal("1152921504606846976.5")),
+        Basket.ofNumber(1152921504606846980L),
+        Basket.ofNumber(0.1),
+        Basket.ofNumber(new BigDecimal("0.1")),
+        Basket.ofNumber(new BigDecimal(0.1))
+    };
+
+    for (Basket a : numbers) {
+      for (Basket b : numbers) {
+        for (Basket c : numbers) {
+          if (a.equals(b) && b.equals(c)) {
+            assertEquals(a + " " + c, a, c);
+          }
+        }
+        if (a.equals(b)) {
+          assertEquals(a.hashCode(), b.hashCode());
+        }
+      }
+    }
+  }
+
+  @Test
+  public void decimalOperandsKeepTheirScale() {
+    assertEquals(new BigDecimal("1.0"), Basket.NumberBasket.Companion.of(new BigDecimal("1.0")).asNumber());
+    assertEquals(new BigDecimal("0.00"), Basket.NumberBasket.Companion.of(new BigDecimal("0.00")).asNumber());
+    assertEquals(new BigDecimal("1E+2"), Basket.NumberBasket.Companion.of(new BigDecimal("1E+2")).asNumber());
+    assertTrue(NumberPredicates.isEqualTo("0.00").invoke(BigDecimal.ZERO));
+  }
+
+  @Test
+  public void predicatesCompareAcrossRepresentations() {
+    Function1<Basket, Boolean> lessThanTen = BasketPredicates.isNumber(NumberPredicates.isLessThan(10));
+    Function1<Basket, Boolean> equalToTen = BasketPredicates.isNumber(NumberPredicates.isEqualTo("10.0"));
+
+    assertTrue(lessThanTen.invoke(Basket.ofNumber(9L)));
+    assertTrue(lessThanTen.invoke(Basket.ofNumber(9.99)));
+    assertTrue(lessThanTen.invoke(Basket.ofNumber(new BigDecimal("9.999999999999999999999"))));
+    assertFalse(lessThanTen.invoke(Basket.ofNumber(10L)));
+    assertFalse(lessThanTen.invoke(Basket.ofString("9")));
+
+    assertTrue(equalToTen.invoke(Basket.ofNumber(10L)));
+    assertTrue(equalToTen.invoke(Basket.ofNumber(10.0)));
+    assertTrue(equalToTen.invoke(Basket.ofNumber(new BigDecimal("10"))));
+    assertFalse(equalToTen.invoke(Basket.ofNumber(10.000001)));
+
+    assertTrue(NumberPredicates.isGreaterThanOrEqualTo(Long.MAX_VALUE).invoke(new BigDecimal(Long.MAX_VALUE)));
+  }
 }
@@ -0,0 +1,182 @@
+package com.codepoetics.raffia.baskets;
+
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class PropertySetTest {
+
+  private static final int SIZE = 5000;
+
+  private static Basket value(int i) {
+    return Basket.ofNumber(BigDecimal.valueOf(i));
+  }
+
+  private static List<ObjectEntry> entries(Map<String, Basket> model) {
+    List<ObjectEntry> entries = new ArrayList<>();
+    for (Map.Entry<String, Basket> entry : model.entrySet()) {
+      entries.add(ObjectEntry.of(entry.getKey(), entry.getValue()));
+    }
+    return entries;
+  }
+
+  @Test
+  public void wideObjectsBehaveLikeAnInsertionOrderedMap() {
+    Random random = new Random(42);
+    Map<String, Basket> model = new LinkedHashMap<>();
+    PropertySet properties = PropertySet.of();
+
+    for (int i = 0; i < SIZE * 4; i++) {
+      String key = "key" + random.nextInt(SIZE);
+      if (random.nextInt(3) == 0) {
+        model.remove(key);
+        properties = properties.minus(key);
+      } else {
+        model.put(key, value(i));
+        properties = properties.with(key, value(i));
+      }
+    }
+
+    assertEquals(model.size(), properties.size());
+    assertEquals(model, properties.toMap());
+    assertEquals(PropertySet.of(model), properties);
+    assertEquals(PropertySet.of(model).hashCode(), properties.hashCode());
+
+    List<ObjectEntry> iterated = new ArrayList<>();
+    for (ObjectEntry entry : properties) {
+      iterated.add(entry);
+    }
+    assertEquals(entries(model), iterated);
+
+    for (int i = 0; i < SIZE; i++) {
+      String key = "key" + i;
+      assertEquals(model.containsKey(key), properties.containsKey(key));
+      assertEquals(model.get(key), properties.get(key));
+    }
+  }
+
+  @Test
+  public void replacingAValueKeepsItsPosition() {
+    PropertySet properties = PropertySet.of(
+        ObjectEntry.of("a", value(1)),
+        ObjectEntry.of("b", value(2)),
+        ObjectEntry.of("c", value(3)));
+
+    assertThat(properties.with("b", value(4)), contains(
+        ObjectEntry.of("a", value(1)),
+        ObjectEntry.of("b", value(4)),
+        ObjectEntry.of("c", value(3))));
+  }
+
+  @Test
+  public void removingAndReAddingMovesAKeyToTheEnd() {
+    PropertySet properties = PropertySet.of(
+        ObjectEntry.of("a", value(1)),
+        ObjectEntry.of("b", value(2)),
+        ObjectEntry.of("c", value(3)));
+
+    assertThat(properties.minus("a").with("a", value(1)), contains(
+        ObjectEntry.of("b", value(2)),
+        ObjectEntry.of("c", value(3)),
+        ObjectEntry.of("a", value(1))));
+  }
+
+  @Test
+  public void removingAnAbsentKeyReturnsTheSameSet() {
+    PropertySet properties = PropertySet.of(ObjectEntry.of("a", value(1)));
+
+    assertSame(properties, properties.minus("b"));
+    assertNull(properties.get("b"));
+  }
+
+  @Test
+  public void removingEverything() {
+    PropertySet properties = PropertySet.of();
+    for (int i = 0; i < SIZE; i++) {
+      properties = properties.with("key" + i, value(i));
+    }
+    for (int i = 0; i < SIZE; i++) {
+      properties = properties.minus("key" + i);
+      assertFalse(properties.containsKey("key" + i));
+      assertEquals(SIZE - i - 1, properties.size());
+    }
+    assertTrue(properties.isEmpty());
+    assertEquals(PropertySet.of(), properties);
+  }
+
+  @Test
+  public void keysWithCollidingHashes() {
+    String[] keys = { "AaAa", "AaBB", "BBAa", "BBBB" };
+
+    PropertySet properties = PropertySet.of();
+    for (int i = 0; i < keys.length; i++) {
+      properties = properties.with(keys[i], value(i));
+    }
+    for (int i = 0; i < keys.length; i++) {
+      assertEquals(value(i), properties.get(keys[i]));
+    }
+
+    PropertySet remaining = properties.minus("AaBB").minus("BBAa").minus("AaAa");
+    assertEquals(1, remaining.size());
+    assertEquals(value(3), remaining.get("BBBB"));
+    assertNull(remaining.get("AaAa"));
+  }
+
+  @Test
+  public void objectsShrinkingBelowTheWideThresholdEqualObjectsBuiltSmall() {
+    PropertySet wide = PropertySet.of();
+    for (int i = 0; i < 40; i++) {
+      wide = wide.with("key" + i, value(i));
+    }
+
+    PropertySet shrunk = wide;
+    for (int i = 10; i < 40; i++) {
+      shrunk = shrunk.minus("key" + i);
+    }
+
+    PropertySet small = PropertySet.of();
+    for (int i = 0; i < 10; i++) {
+      small = small.with("key" + i, value(i));
+    }
+
+    assertEquals(small, shrunk);
+    assertEquals(small.hashCode(), shrunk.hashCode());
+    assertEquals(value(5), shrunk.get("key5"));
+    assertNull(shrunk.get("key15"));
+  }
+
+  @Test
+  public void keysAreCanonicalised() {
+    PropertySet first = PropertySet.of(ObjectEntry.of(new String("price"), value(1)));
+    PropertySet second = PropertySet.of().with(new String("price"), value(2));
+
+    PropertySet wide = PropertySet.of();
+    for (int i = 0; i < 40; i++) {
+      wide = wide.with("key" + i, value(i));
+    }
+    wide = wide.with(new String("price"), value(3));
+
+    String key = KeyDictionary.intern("price");
+    assertSame(key, first.iterator().next().getKey());
+    assertSame(key, second.iterator().next().getKey());
+
+    String wideKey = null;
+    for (ObjectEntry entry : wide) {
+      wideKey = entry.getKey();
+    }
+    assertSame(key, wideKey);
+  }
+}
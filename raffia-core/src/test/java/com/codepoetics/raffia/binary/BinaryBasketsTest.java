@@ -0,0 +1,89 @@
+package com.codepoetics.raffia.binary;
+
+import com.codepoetics.raffia.baskets.Basket;
+import com.codepoetics.raffia.baskets.ObjectEntry;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.codepoetics.raffia.StoreExample.MELVILLE;
+import static com.codepoetics.raffia.StoreExample.store;
+import static com.codepoetics.raffia.lenses.Strands.strand;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+
+public class BinaryBasketsTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void roundTripsThroughHeapAndDirectBuffers() {
+    assertThat(BinaryBaskets.view(BinaryBaskets.encode(store)), equalTo(store));
+    assertThat(BinaryBaskets.view(BinaryBaskets.encodeDirect(store)), equalTo(store));
+  }
+
+  @Test
+  public void preservesNumberRepresentations() {
+    Basket numbers = Basket.ofArray(
+        Basket.ofNumber(1L),
+        Basket.ofNumber(Long.MAX_VALUE),
+        Basket.ofNumber(8.95),
+        Basket.ofNumber(new BigDecimal("123456789012345678901234567890.000")));
+
+    Basket decoded = BinaryBaskets.view(BinaryBaskets.encode(numbers));
+
+    assertThat(decoded, equalTo(numbers));
+    assertThat(decoded.getItem(3).asNumber().toString(), equalTo("123456789012345678901234567890.000"));
+  }
+
+  @Test
+  public void strandsReadStraightFromTheBuffer() {
+    ByteBuffer encoded = BinaryBaskets.encodeDirect(store);
+    Basket view = BinaryBaskets.view(encoded);
+
+    assertThat(strand("$.store.book[2]").getSingle(view), equalTo(MELVILLE));
+    assertThat(view.getProperty("store").asObject().getPendingSource(), notNullValue());
+
+    assertThat(strand("$..author").getAllStrings(view),
+        contains("Nigel Rees", "Evelyn Waugh", "Herman Melville", "J. R. R. Tolkien"));
+  }
+
+  @Test
+  public void looksUpKeysAndRemembersDecodedValues() {
+    List<ObjectEntry> entries = new ArrayList<>();
+    for (int i = 99; i >= 0; i--) {
+      entries.add(ObjectEntry.of("key" + i, Basket.ofArray(Basket.ofNumber((long) i))));
+    }
+    Basket wide = Basket.ofObject(entries);
+    Basket view = BinaryBaskets.view(BinaryBaskets.encode(Basket.ofArray(wide, wide)));
+
+    Basket decoded = view.getItem(0);
+    for (int i = 0; i < 100; i++) {
+      assertThat(decoded.getProperty("key" + i), equalTo(Basket.ofArray(Basket.ofNumber((long) i))));
+    }
+    assertThat(decoded.getProperty("missing"), nullValue());
+    assertThat(decoded.getProperty("key7"), sameInstance(decoded.getProperty("key7")));
+    assertThat(view.getItem(0), sameInstance(decoded));
+    assertThat(view.getItem(0).entries(), equalTo(wide.entries()));
+  }
+
+  @Test
+  public void mapsEncodedFiles() throws IOException {
+    File file = folder.newFile("store.rafb");
+    BinaryBaskets.write(store, file);
+
+    assertThat(BinaryBaskets.map(file), equalTo(store));
+  }
+}
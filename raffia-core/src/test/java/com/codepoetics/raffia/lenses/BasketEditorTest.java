@@ -0,0 +1,138 @@
+package com.codepoetics.raffia.lenses;
+
+import com.codepoetics.raffia.baskets.Basket;
+import com.codepoetics.raffia.operations.Updaters;
+import kotlin.Unit;
+import kotlin.jvm.functions.Function1;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.codepoetics.raffia.StoreExample.store;
+import static com.codepoetics.raffia.lenses.Strands.strand;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.sameInstance;
+
+public class BasketEditorTest {
+
+  private static final Function1<Basket, Basket> capitaliseString = Updaters.ofString(new Function1<String, String>() {
+    @Override
+    public String invoke(String input) {
+      return input.toUpperCase();
+    }
+  });
+
+  @Test
+  public void batchedEditsMatchSuccessiveUpdates() {
+    Basket edited = BasketEditor.edit(store, new Function1<BasketEditor, Unit>() {
+      @Override
+      public Unit invoke(BasketEditor editor) {
+        editor.set(strand("$.store.book[0].price"), new BigDecimal("9.95"));
+        editor.set(strand("$.store.book[1].title"), "Sword of Honour, Vol. 1");
+        editor.update(strand("$.store.book[-1].author"), capitaliseString);
+        editor.set(strand("$.store.bicycle[0].color"), "blue");
+        editor.set(strand("$.expensive"), new BigDecimal("20"));
+        return Unit.INSTANCE;
+      }
+    });
+
+    Basket updated = strand("$.store.book[0].price").set(store, new BigDecimal("9.95"));
+    updated = strand("$.store.book[1].title").set(updated, "Sword of Honour, Vol. 1");
+    updated = strand("$.store.book[-1].author").update(updated, capitaliseString);
+    updated = strand("$.store.bicycle[0].color").set(updated, "blue");
+    updated = strand("$.expensive").set(updated, new BigDecimal("20"));
+
+    assertThat(edited, equalTo(updated));
+  }
+
+  @Test
+  public void untouchedSubtreesAreShared() {
+    Basket edited = BasketEditor.edit(store, new Function1<BasketEditor, Unit>() {
+      @Override
+      public Unit invoke(BasketEditor editor) {
+        editor.set(strand("$.store.book[0].price"), new BigDecimal("9.95"));
+        editor.set(strand("$.store.book[0].category"), "classics");
+        return Unit.INSTANCE;
+      }
+    });
+
+    assertThat(strand("$.store.bicycle").getSingle(edited), sameInstance(strand("$.store.bicycle").getSingle(store)));
+    assertThat(strand("$.store.book[1]").getSingle(edited), sameInstance(strand("$.store.book[1]").getSingle(store)));
+    assertThat(strand("$.store.book[0].category").getString(edited), equalTo("classics"));
+  }
+
+  @Test
+  public void editsWhichChangeNothingReturnTheOriginal() {
+    Basket edited = BasketEditor.edit(store, new Function1<BasketEditor, Unit>() {
+      @Override
+      public Unit invoke(BasketEditor editor) {
+        editor.update(strand("$.store.book[0].price"), Updaters.INSTANCE.getNO_OP());
+        editor.set(strand("$.store.book[7].price"), new BigDecimal("1"));
+        editor.set(strand("$.store.nothing"), "here");
+        return Unit.INSTANCE;
+      }
+    });
+
+    assertThat(edited, sameInstance(store));
+  }
+
+  @Test
+  public void laterEditsSeeEarlierOnes() {
+    Basket edited = BasketEditor.edit(store, new Function1<BasketEditor, Unit>() {
+      @Override
+      public Unit invoke(BasketEditor editor) {
+        editor.set(strand("$.store.book[0].author"), "Someone Else");
+        editor.update(strand("$.store.book[0].author"), capitaliseString);
+        editor.update(strand("$..author"), capitaliseString);
+        return Unit.INSTANCE;
+      }
+    });
+
+    assertThat(strand("$..author").getAllStrings(edited),
+        contains("SOMEONE ELSE", "EVELYN WAUGH", "HERMAN MELVILLE", "J. R. R. TOLKIEN"));
+  }
+
+  @Test
+  public void editingManyItemsOfALargeArray() {
+    List<Basket> items = new ArrayList<>();
+    for (int i = 0; i < 5000; i++) {
+      items.add(Basket.ofNumber(i));
+    }
+    final Basket array = Basket.ofArray(items);
+
+    Basket edited = BasketEditor.edit(array, new Function1<BasketEditor, Unit>() {
+      @Override
+      public Unit invoke(BasketEditor editor) {
+        for (int i = 0; i < 5000; i += 37) {
+          editor.set(strand("$").to(i), "edited");
+        }
+        return Unit.INSTANCE;
+      }
+    });
+
+    Basket updated = array;
+    for (int i = 0; i < 5000; i += 37) {
+      updated = strand("$").to(i).set(updated, "edited");
+    }
+
+    assertThat(edited, equalTo(updated));
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void editorsCannotBeUsedAfterCompletion() {
+    final BasketEditor[] escaped = new BasketEditor[1];
+    BasketEditor.edit(store, new Function1<BasketEditor, Unit>() {
+      @Override
+      public Unit invoke(BasketEditor editor) {
+        escaped[0] = editor;
+        return Unit.INSTANCE;
+      }
+    });
+
+    escaped[0].set(strand("$.expensive"), "oops");
+  }
+}
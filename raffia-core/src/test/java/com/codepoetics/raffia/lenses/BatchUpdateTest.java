@@ -0,0 +1,83 @@
+package com.codepoetics.raffia.lenses;
+
+import com.codepoetics.raffia.baskets.Basket;
+import com.codepoetics.raffia.baskets.ObjectEntry;
+import com.codepoetics.raffia.operations.Setters;
+import com.codepoetics.raffia.operations.Updaters;
+import kotlin.jvm.functions.Function1;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+
+import static com.codepoetics.raffia.StoreExample.store;
+import static com.codepoetics.raffia.lenses.Strands.strand;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.sameInstance;
+
+public class BatchUpdateTest {
+
+  private static final Function1<Basket, Basket> capitaliseString = Updaters.ofString(new Function1<String, String>() {
+    @Override
+    public String invoke(String input) {
+      return input.toUpperCase();
+    }
+  });
+
+  @Test
+  public void batchMatchesSuccessiveUpdates() {
+    BatchUpdate batch = BatchUpdate.empty()
+        .set(strand("$.store.book[0].price"), new BigDecimal("9.95"))
+        .update(strand("$.store.book[0,1].title"), capitaliseString)
+        .update(strand("$.store.book[-1].author"), capitaliseString)
+        .update(strand("$..category"), capitaliseString)
+        .set(strand("$.store.bicycle[0].color"), "blue")
+        .set(strand("$.expensive"), new BigDecimal("20"));
+
+    Basket updated = strand("$.store.book[0].price").set(store, new BigDecimal("9.95"));
+    updated = strand("$.store.book[0,1].title").update(updated, capitaliseString);
+    updated = strand("$.store.book[-1].author").update(updated, capitaliseString);
+    updated = strand("$..category").update(updated, capitaliseString);
+    updated = strand("$.store.bicycle[0].color").set(updated, "blue");
+    updated = strand("$.expensive").set(updated, new BigDecimal("20"));
+
+    assertThat(batch.apply(store), equalTo(updated));
+  }
+
+  @Test
+  public void overlappingUpdatesApplyInOrder() {
+    Basket replacement = Basket.ofObject(ObjectEntry.of("title", Basket.ofString("Replaced")));
+
+    BatchUpdate batch = BatchUpdate.empty()
+        .update(strand("$.store.book[0].title"), capitaliseString)
+        .set(strand("$.store.book[0]"), replacement)
+        .update(strand("$.store.book[0].title"), capitaliseString)
+        .set(strand("$.store.book[0].title"), "Last");
+
+    Basket applied = batch.apply(store);
+
+    assertThat(strand("$.store.book[0].title").getString(applied), equalTo("Last"));
+    assertThat(strand("$.store.book[0]").getSingle(applied).size(), equalTo(1));
+  }
+
+  @Test
+  public void untouchedSubtreesAreShared() {
+    Basket applied = BatchUpdate.empty()
+        .set(strand("$.store.book[0].price"), new BigDecimal("9.95"))
+        .set(strand("$.store.book[0].category"), "classics")
+        .apply(store);
+
+    assertThat(strand("$.store.bicycle").getSingle(applied), sameInstance(strand("$.store.bicycle").getSingle(store)));
+    assertThat(strand("$.store.book[2]").getSingle(applied), sameInstance(strand("$.store.book[2]").getSingle(store)));
+  }
+
+  @Test
+  public void batchesWhichChangeNothingReturnTheOriginal() {
+    Basket applied = BatchUpdate.empty()
+        .update(strand("$.store.book[0].price"), Updaters.INSTANCE.getNO_OP())
+        .update(strand("$.store.missing.price"), Setters.toNull())
+        .apply(store);
+
+    assertThat(applied, sameInstance(store));
+  }
+}
@@ -0,0 +1,118 @@
+package com.codepoetics.raffia.lenses;
+
+import com.codepoetics.raffia.baskets.Basket;
+import com.codepoetics.raffia.baskets.ObjectEntry;
+import kotlin.jvm.functions.Function1;
+import org.junit.Test;
+
+import static com.codepoetics.raffia.StoreExample.*;
+import static com.codepoetics.raffia.lenses.Strands.strand;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.sameInstance;
+
+public class DeepTraversalTest {
+
+  private static final int DEPTH = 100000;
+
+  private static final Function1<Basket, Basket> shout = new Function1<Basket, Basket>() {
+    @Override
+    public Basket invoke(Basket basket) {
+      return Basket.ofString(basket.asString().toUpperCase());
+    }
+  };
+
+  private static Basket nestedObjects() {
+    Basket basket = Basket.ofObject(ObjectEntry.of("name", Basket.ofString("leaf")));
+    for (int i = 0; i < DEPTH; i++) {
+      basket = Basket.ofObject(ObjectEntry.of("child", basket));
+    }
+    return basket;
+  }
+
+  private static Basket nestedArrays() {
+    Basket basket = Basket.ofArray(Basket.ofString("leaf"));
+    for (int i = 0; i < DEPTH; i++) {
+      basket = Basket.ofArray(basket);
+    }
+    return basket;
+  }
+
+  private static final Basket small = Basket.ofObject(
+      ObjectEntry.of("x", Basket.ofObject(ObjectEntry.of("a", Basket.ofNumber(1L)))),
+      ObjectEntry.of("y", Basket.ofArray(Basket.ofObject(ObjectEntry.of("a", Basket.ofNumber(2L))))));
+
+  @Test
+  public void deeplyNestedBasketsDoNotOverflowTheStack() {
+    Basket objects = nestedObjects();
+    assertThat(strand("$..name").getAll(objects), contains(Basket.ofString("leaf")));
+    assertThat(strand("$..name").count(objects), equalTo(1));
+
+    Basket updated = strand("$..name").update(objects, shout);
+    for (int i = 0; i < DEPTH; i++) {
+      updated = updated.getProperty("child");
+    }
+    assertThat(updated.getProperty("name"), equalTo(Basket.ofString("LEAF")));
+
+    Basket arrays = nestedArrays();
+    assertThat(strand("$").toEverything().count(arrays), equalTo(DEPTH + 2));
+    assertThat(strand("$..name").getAll(arrays), empty());
+  }
+
+  @Test
+  public void deepScansStopAtTheirMaximumDepth() {
+    assertThat(strand("$").toDeep("a", 1).getAll(small), empty());
+    assertThat(strand("$").toDeep("a", 2).getAll(small), contains(Basket.ofNumber(1L)));
+    assertThat(strand("$").toDeep("a", 3).getAll(small), contains(Basket.ofNumber(1L), Basket.ofNumber(2L)));
+
+    Function1<Basket, Basket> increment = new Function1<Basket, Basket>() {
+      @Override
+      public Basket invoke(Basket basket) {
+        return Basket.ofNumber(basket.asNumber().longValue() + 1);
+      }
+    };
+    Basket updated = strand("$").toDeep("a", 2).update(small, increment);
+    assertThat(strand("$..a").getAll(updated), contains(Basket.ofNumber(2L), Basket.ofNumber(2L)));
+    assertThat(updated.getProperty("y"), sameInstance(small.getProperty("y")));
+  }
+
+  @Test
+  public void wildcardScansStopAtTheirMaximumDepth() {
+    Basket x = small.getProperty("x");
+    Basket y = small.getProperty("y");
+    Basket a2 = y.getItem(0);
+
+    assertThat(strand("$").toEverything(1).getAll(small), contains(x, y));
+    assertThat(strand("$").toEverything(2).getAll(small), contains(x, y, Basket.ofNumber(1L), a2));
+    assertThat(strand("$").toEverything().getAll(small), contains(
+        x, y, Basket.ofNumber(1L), Basket.ofNumber(1L), a2, Basket.ofNumber(2L), Basket.ofNumber(2L)));
+  }
+
+  @Test
+  public void unboundedScansMatchAsBefore() {
+    assertThat(strand("$..author").getAll(store), contains(
+        Basket.ofString("Nigel Rees"),
+        Basket.ofString("Evelyn Waugh"),
+        Basket.ofString("Herman Melville"),
+        Basket.ofString("J. R. R. Tolkien")));
+    assertThat(strand("$.store").toEverything().count(store), equalTo(47));
+  }
+
+  @Test
+  public void boundedScansShowTheirBoundsOnlyInTheirStringForms() {
+    Strand boundedScan = strand("$").toDeep("a", 2);
+    Strand boundedWildcard = strand("$").toEverything(1);
+
+    assertThat(boundedScan.getPath(), equalTo("$..a"));
+    assertThat(strand(boundedScan.getPath()), equalTo(strand("$").toDeep("a")));
+    assertThat(boundedWildcard.getPath(), equalTo("$..*"));
+    assertThat(boundedScan.toString(), containsString("maxDepth=2"));
+    assertThat(boundedWildcard.toString(), containsString("maxDepth=1"));
+
+    assertThat(Strands.steps(strand("$").toEverything()).get(0), equalTo((Strand) DeepWildcardStrand.INSTANCE));
+    assertThat(new DeepScanStrand("a", 2, true).toString(), containsString("usingKeySummaries=true"));
+  }
+}
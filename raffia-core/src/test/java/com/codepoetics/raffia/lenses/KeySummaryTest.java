@@ -0,0 +1,132 @@
+package com.codepoetics.raffia.lenses;
+
+import com.codepoetics.raffia.baskets.Basket;
+import com.codepoetics.raffia.baskets.KeySummaries;
+import com.codepoetics.raffia.baskets.ObjectEntry;
+import kotlin.jvm.functions.Function1;
+import org.junit.Test;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static com.codepoetics.raffia.StoreExample.*;
+import static com.codepoetics.raffia.lenses.Strands.strand;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.sameInstance;
+
+public class KeySummaryTest {
+
+  private static final String[] PATHS = {
+      "$..price",
+      "$..author",
+      "$..isbn",
+      "$..book[?(@.isbn)].title",
+      "$.store..color",
+      "$..missing",
+      "$..book..price"
+  };
+
+  private static final Function1<Basket, Basket> wrap = new Function1<Basket, Basket>() {
+    @Override
+    public Basket invoke(Basket basket) {
+      return Basket.ofArray(basket);
+    }
+  };
+
+  /**
+   * Many records, only one of which has an audit trail, nested a few levels down.
+   */
+  private static Basket records() {
+    List<Basket> records = new ArrayList<>();
+    for (int i = 0; i < 1000; i++) {
+      List<ObjectEntry> fields = new ArrayList<>();
+      fields.add(ObjectEntry.of("id", Basket.ofNumber((long) i)));
+      fields.add(ObjectEntry.of("name", Basket.ofString("record " + i)));
+      if (i == 700) {
+        fields.add(ObjectEntry.of("history", Basket.ofArray(
+            Basket.ofObject(ObjectEntry.of("audit", Basket.ofString("checked"))))));
+      }
+      records.add(Basket.ofObject(fields));
+    }
+    return Basket.ofObject(ObjectEntry.of("records", Basket.ofArray(records)));
+  }
+
+  @Test
+  public void summariesAreOptIn() {
+    Strand summarised = strand("$.store..price").withKeySummaries();
+
+    assertThat(summarised.getPath(), equalTo("$.store..price"));
+    assertThat(Strands.steps(summarised).get(1), equalTo(
+        (Strand) new DeepScanStrand("price", Integer.MAX_VALUE, true)));
+    assertThat(Strands.steps(strand("$.store..price")).get(1), equalTo(
+        (Strand) new DeepScanStrand("price")));
+  }
+
+  @Test
+  public void summarisedScansMatchUnsummarisedScans() {
+    Basket records = records();
+    for (String path : PATHS) {
+      Strand plain = strand(path);
+      Strand summarised = plain.withKeySummaries();
+
+      assertThat(path, summarised.getAll(store), equalTo(plain.getAll(store)));
+      assertThat(path, summarised.getAll(records), equalTo(plain.getAll(records)));
+      assertThat(path, summarised.update(store, wrap), equalTo(plain.update(store, wrap)));
+    }
+
+    assertThat(strand("$..audit").withKeySummaries().getAll(records), contains(Basket.ofString("checked")));
+    assertThat(strand("$..audit").withKeySummaries().count(records), equalTo(1));
+  }
+
+  @Test
+  public void updatesPassOverSubtreesWithoutTheKey() throws Exception {
+    Basket records = records();
+    List<Basket> before = records.getProperty("records").items();
+
+    // Give the record with the audit trail the summary of one without, so that only a pruned update will miss it.
+    Basket audited = before.get(700);
+    plantSummary(audited, KeySummaries.INSTANCE.summaryOf(before.get(0)));
+    assertThat(KeySummaries.INSTANCE.mayContain(audited, KeySummaries.INSTANCE.bitsOf("audit")), equalTo(false));
+
+    Basket pruned = strand("$..audit").withKeySummaries().update(records, wrap);
+    assertThat(pruned, sameInstance(records));
+
+    Basket unpruned = strand("$..audit").update(records, wrap);
+    assertThat(strand("$..audit[0]").getAll(unpruned), contains(Basket.ofString("checked")));
+  }
+
+  private static void plantSummary(Basket basket, long summary) throws Exception {
+    Field keySummary = basket.getClass().getDeclaredField("keySummary");
+    keySummary.setAccessible(true);
+    keySummary.setLong(basket, summary);
+  }
+
+  @Test
+  public void querySetsUseSummariesWhenAsked() {
+    Basket records = records();
+    QuerySet queries = QuerySet.empty()
+        .with("audits", strand("$..audit").withKeySummaries())
+        .with("names", strand("$..name").withKeySummaries())
+        .with("prices", strand("$..price"));
+
+    Map<String, List<Basket>> results = queries.evaluate(records);
+    assertThat(results.get("audits"), contains(Basket.ofString("checked")));
+    assertThat(results.get("names"), equalTo(strand("$..name").getAll(records)));
+    assertThat(queries.evaluate(store).get("prices"), equalTo(strand("$..price").getAll(store)));
+  }
+
+  @Test
+  public void summariesOfDeeplyNestedBasketsDoNotOverflowTheStack() {
+    Basket basket = Basket.ofObject(ObjectEntry.of("name", Basket.ofString("leaf")));
+    for (int i = 0; i < 100000; i++) {
+      basket = Basket.ofObject(ObjectEntry.of("child", basket));
+    }
+
+    assertThat(strand("$..name").withKeySummaries().getAll(basket), contains(Basket.ofString("leaf")));
+    assertThat(strand("$..missing").withKeySummaries().count(basket), equalTo(0));
+  }
+}
@@ -0,0 +1,107 @@
+package com.codepoetics.raffia.lenses;
+
+import com.codepoetics.raffia.baskets.Basket;
+import com.codepoetics.raffia.baskets.ObjectEntry;
+import kotlin.jvm.functions.Function1;
+import org.junit.AfterClass;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static com.codepoetics.raffia.lenses.Strands.strand;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.sameInstance;
+
+public class ParallelStrandTest {
+
+  private static final ForkJoinPool POOL = new ForkJoinPool(4);
+
+  private static final Basket ITEMS = items(1000);
+
+  private static final Function1<Basket, Boolean> isEven = new Function1<Basket, Boolean>() {
+    @Override
+    public Boolean invoke(Basket basket) {
+      return basket.getProperty("n").asNumber().intValue() % 2 == 0;
+    }
+  };
+
+  private static final Function1<Basket, Basket> negate = new Function1<Basket, Basket>() {
+    @Override
+    public Basket invoke(Basket basket) {
+      return Basket.ofNumber(basket.asNumber().negate());
+    }
+  };
+
+  @AfterClass
+  public static void shutDown() {
+    POOL.shutdown();
+  }
+
+  private static Basket items(int count) {
+    List<Basket> items = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      items.add(Basket.ofObject(
+          ObjectEntry.of("n", Basket.ofNumber(new BigDecimal(i))),
+          ObjectEntry.of("tags", Basket.ofArray(Basket.ofString("a" + i), Basket.ofString("b" + i)))));
+    }
+    return Basket.ofObject(ObjectEntry.of("items", Basket.ofArray(items)));
+  }
+
+  private static Strand parallel(Strand strand) {
+    return new ParallelStrand(strand, POOL, 100);
+  }
+
+  @Test
+  public void parallelMatchesAreInOrder() {
+    Strand[] strands = {
+        strand("$.items[*].n"),
+        strand("$.items[?].tags[1]", isEven),
+        strand("$.items[10:990].tags[*]"),
+        strand("$.items[-5:]"),
+        strand("$..n")
+    };
+
+    for (Strand strand : strands) {
+      assertThat(strand.getPath(), parallel(strand).getAll(ITEMS), equalTo(strand.getAll(ITEMS)));
+    }
+  }
+
+  @Test
+  public void parallelUpdatesMatchSequentialUpdates() {
+    Strand[] strands = {
+        strand("$.items[*].n"),
+        strand("$.items[?].n", isEven),
+        strand("$.items[10:990].n"),
+        strand("$.items[0:5].n")
+    };
+
+    for (Strand strand : strands) {
+      assertThat(strand.getPath(), parallel(strand).update(ITEMS, negate), equalTo(strand.update(ITEMS, negate)));
+    }
+  }
+
+  @Test
+  public void unchangedArraysAreReturnedByReference() {
+    Function1<Basket, Basket> identity = new Function1<Basket, Basket>() {
+      @Override
+      public Basket invoke(Basket basket) {
+        return basket;
+      }
+    };
+
+    assertThat(parallel(strand("$.items[*].n")).update(ITEMS, identity), sameInstance(ITEMS));
+  }
+
+  @Test
+  public void composingKeepsTheStrandParallel() {
+    Strand composed = parallel(strand("$.items[*]")).to("n");
+
+    assertThat(composed, equalTo(parallel(strand("$.items[*].n"))));
+    assertThat(composed.getAll(ITEMS), equalTo(strand("$.items[*].n").getAll(ITEMS)));
+    assertThat(strand("$.items[*].n").parallel().getAll(items(10)), equalTo(strand("$.items[*].n").getAll(items(10))));
+  }
+}
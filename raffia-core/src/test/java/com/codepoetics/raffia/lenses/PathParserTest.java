@@ -0,0 +1,93 @@
+package com.codepoetics.raffia.lenses;
+
+import com.codepoetics.raffia.baskets.Basket;
+import kotlin.jvm.functions.Function1;
+import org.junit.Test;
+
+import static com.codepoetics.raffia.lenses.Strands.strand;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.fail;
+
+public class PathParserTest {
+
+  private static final Function1<Basket, Boolean> always = new Function1<Basket, Boolean>() {
+    @Override
+    public Boolean invoke(Basket basket) {
+      return true;
+    }
+  };
+
+  @Test
+  public void parsesEachKindOfSegment() {
+    assertThat(strand("$.store.book[0]"), equalTo(RootStrand.INSTANCE.to("store").to("book").to(0)));
+    assertThat(strand("$..author"), equalTo(RootStrand.INSTANCE.toDeep("author")));
+    assertThat(strand("$.store.*[*]"), equalTo(RootStrand.INSTANCE.to("store").toAll().toAll()));
+    assertThat(strand("$.store['book', 'bicycle']"), equalTo(RootStrand.INSTANCE.to("store").to("book", "bicycle")));
+    assertThat(strand("$['store']"), equalTo(RootStrand.INSTANCE.to("store")));
+    assertThat(strand("$.book[-1, 2]"), equalTo(RootStrand.INSTANCE.to("book").to(-1, 2)));
+    assertThat(strand("$.book[1:3]"), equalTo(RootStrand.INSTANCE.to("book").then(new ArraySliceStrand(1, 3))));
+    assertThat(strand("$.book[:-1]"), equalTo(RootStrand.INSTANCE.to("book").then(new ArraySliceStrand(0, -1))));
+    assertThat(strand("$.book[2:]"), equalTo(RootStrand.INSTANCE.to("book").then(new ArraySliceStrand(2, Integer.MAX_VALUE))));
+    assertThat(strand(" @.a-b_c "), equalTo(RootStrand.INSTANCE.to("a-b_c")));
+    assertThat(strand("$"), equalTo((Strand) RootStrand.INSTANCE));
+  }
+
+  @Test
+  public void consumesPredicatesInOrder() {
+    Strand parsed = strand("$.book[?].title[?]", always, always);
+
+    assertThat(parsed.getPath(), equalTo("$.book[?].title[?]"));
+  }
+
+  @Test
+  public void rejectsMalformedPaths() {
+    for (String path : new String[] { "store", "$..*", "$.", "$[]", "$[1", "$.book[a]", "$.book[1:2:3]", "$.book[:]", "$x", "$[?]" }) {
+      try {
+        strand(path);
+        fail("Expected " + path + " to be rejected");
+      } catch (IllegalArgumentException expected) {
+        // expected
+      }
+    }
+
+    for (String path : new String[] { "$[?(@.price <)]", "$[?(@.price < 10]", "$[?(@.price < 10)", "$[?(@.title == 'x)]", "$[?(10)]", "$[?(@.a ~ 1)]" }) {
+      try {
+        strand(path);
+        fail("Expected " + path + " to be rejected");
+      } catch (IllegalArgumentException expected) {
+        // expected
+      }
+    }
+
+    try {
+      strand("$.book", always);
+      fail("Expected unmatched predicate to be rejected");
+    } catch (IllegalArgumentException expected) {
+      // expected
+    }
+  }
+
+  @Test
+  public void cachesPathsWithoutPredicates() {
+    assertThat(strand("$.store.book[*].author"), sameInstance(strand("$.store.book[*].author")));
+    assertThat(strand("$.book[?]", always), not(sameInstance(strand("$.book[?]", always))));
+    assertThat(strand("$.book[?]", always), instanceOf(ComposedStrand.class));
+  }
+
+  @Test
+  public void longCompositionsBuildTheirPathOnce() {
+    Strand strand = RootStrand.INSTANCE;
+    StringBuilder expected = new StringBuilder("$");
+    for (int i = 0; i < 20000; i++) {
+      strand = strand.to("a").to(i);
+      expected.append(".a[").append(i).append("]");
+    }
+
+    assertThat(strand.getPath(), equalTo(expected.toString()));
+    assertThat(Strands.steps(strand).size(), equalTo(40000));
+  }
+}
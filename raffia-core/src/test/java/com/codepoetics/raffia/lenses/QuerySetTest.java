@@ -0,0 +1,96 @@
+package com.codepoetics.raffia.lenses;
+
+import com.codepoetics.raffia.baskets.Basket;
+import com.codepoetics.raffia.baskets.ObjectEntry;
+import org.junit.Test;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.codepoetics.raffia.StoreExample.*;
+import static com.codepoetics.raffia.lenses.Strands.strand;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.hasSize;
+
+public class QuerySetTest {
+
+  private static final String[] PATHS = {
+      "$.store.book[0].title",
+      "$.store.book[*].author",
+      "$.store.book[1:3].price",
+      "$.store.bicycle",
+      "$..author",
+      "$..price",
+      "$.store..price",
+      "$..book[?(@.isbn)].title",
+      "$..book[-1:]",
+      "$.store['bicycle','book'][0]",
+      "$.missing..author"
+  };
+
+  @Test
+  public void eachQueryMatchesItsOwnStrand() {
+    Map<String, Strand> queries = new LinkedHashMap<>();
+    for (String path : PATHS) {
+      queries.put(path, strand(path));
+    }
+
+    Map<String, List<Basket>> results = QuerySet.of(queries).evaluate(store);
+
+    assertThat(results.keySet(), contains(PATHS));
+    for (String path : PATHS) {
+      assertThat(path, results.get(path), equalTo(strand(path).getAll(store)));
+    }
+  }
+
+  @Test
+  public void sharedDeepScansStopAtTheirOwnKey() {
+    QuerySet queries = QuerySet.empty()
+        .with("books", "$..book")
+        .with("authors", "$..author")
+        .with("firstAuthor", "$..book[0].author");
+
+    Map<String, List<Basket>> results = queries.evaluate(store);
+
+    assertThat(results.get("books"), hasSize(1));
+    assertThat(results.get("authors"), hasSize(4));
+    assertThat(results.get("firstAuthor"), contains(Basket.ofString("Nigel Rees")));
+  }
+
+  @Test
+  public void sharedDeepScansOfDeeplyNestedBasketsDoNotOverflowTheStack() {
+    Basket basket = Basket.ofObject(ObjectEntry.of("name", Basket.ofString("leaf")));
+    for (int i = 0; i < 100000; i++) {
+      basket = Basket.ofArray(Basket.ofObject(ObjectEntry.of("child", basket)));
+    }
+
+    Map<String, List<Basket>> results = QuerySet.empty()
+        .with("names", strand("$..name"))
+        .with("missing", strand("$..missing").withKeySummaries())
+        .with("summarised names", strand("$..name").withKeySummaries())
+        .evaluate(basket);
+
+    assertThat(results.get("names"), contains(Basket.ofString("leaf")));
+    assertThat(results.get("missing"), hasSize(0));
+    assertThat(results.get("summarised names"), contains(Basket.ofString("leaf")));
+  }
+
+  @Test
+  public void queriesWithTheSamePathAreBothAnswered() {
+    Map<String, List<Basket>> results = QuerySet.empty()
+        .with("first", "$..book[?(@.isbn)]")
+        .with("second", "$..book[?(@.isbn)]")
+        .evaluate(store);
+
+    assertThat(results.get("first"), contains(MELVILLE, TOLKIEN));
+    assertThat(results.get("second"), contains(MELVILLE, TOLKIEN));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void namesMustBeUnique() {
+    QuerySet.empty().with("books", "$..book").with("books", "$.store.book");
+  }
+}
@@ -0,0 +1,103 @@
+package com.codepoetics.raffia.lenses;
+
+import com.codepoetics.raffia.baskets.Basket;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Map;
+
+import static com.codepoetics.raffia.StoreExample.*;
+import static com.codepoetics.raffia.lenses.Strands.strand;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.comparesEqualTo;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.nullValue;
+
+public class StrandAggregationTest {
+
+  @Test
+  public void aggregatesOfPrices() {
+    Strand prices = strand("$..price");
+
+    assertThat(prices.sum(store), comparesEqualTo(new BigDecimal("73.87")));
+    assertThat(prices.min(store), comparesEqualTo(new BigDecimal("8.95")));
+    assertThat(prices.max(store), comparesEqualTo(new BigDecimal("22.99")));
+    assertThat(prices.average(store), comparesEqualTo(new BigDecimal("14.774")));
+
+    NumberSummary summary = prices.summarise(store);
+    assertThat(summary.getCount(), equalTo(5));
+    assertThat(summary.getSumAsDouble(), closeTo(73.87, 0.000001));
+  }
+
+  @Test
+  public void nonNumericMatchesAreIgnored() {
+    assertThat(strand("$..author").sum(store), comparesEqualTo(BigDecimal.ZERO));
+    assertThat(strand("$..author").min(store), nullValue());
+    assertThat(strand("$..author").average(store), nullValue());
+    assertThat(strand("$.store.book[0].*").summarise(store).getCount(), equalTo(1));
+  }
+
+  @Test
+  public void longSumsOverflowIntoDecimals() {
+    Basket numbers = Basket.ofArray(
+        Basket.ofNumber(Long.MAX_VALUE),
+        Basket.ofNumber(Long.MAX_VALUE),
+        Basket.ofNumber(new BigDecimal("0.5")),
+        Basket.ofNumber(-1L));
+
+    BigDecimal expected = BigDecimal.valueOf(Long.MAX_VALUE).multiply(new BigDecimal(2)).add(new BigDecimal("-0.5"));
+    assertThat(strand("$[*]").sum(numbers), comparesEqualTo(expected));
+    assertThat(strand("$[*]").min(numbers), comparesEqualTo(BigDecimal.ONE.negate()));
+  }
+
+  @Test
+  public void doublesAreSummedAlongsideExactNumbers() {
+    Basket numbers = Basket.ofArray(
+        Basket.ofNumber(0.5),
+        Basket.ofNumber(2L),
+        Basket.ofNumber(0.25),
+        Basket.ofNumber(new BigDecimal("0.1")));
+
+    NumberSummary summary = strand("$[*]").summarise(numbers);
+    assertThat(summary.getSum(), comparesEqualTo(new BigDecimal("2.85")));
+    assertThat(summary.getSumAsDouble(), closeTo(2.85, 0.000001));
+    assertThat(summary.getMin(), comparesEqualTo(new BigDecimal("0.1")));
+    assertThat(summary.getMax(), comparesEqualTo(new BigDecimal("2")));
+  }
+
+  @Test
+  public void sumsOfDoublesAreExact() {
+    Basket tenths = Basket.ofArray(Basket.ofNumber(0.1), Basket.ofNumber(0.2));
+    Basket huge = Basket.ofArray(Basket.ofNumber(1e308), Basket.ofNumber(1e308));
+    Basket mixed = Basket.ofArray(
+        Basket.ofNumber(1e-20), Basket.ofNumber(123456.789), Basket.ofNumber(8.95), Basket.ofNumber(-3e15), Basket.ofNumber(7L));
+
+    assertThat(strand("$[*]").sum(tenths), comparesEqualTo(new BigDecimal("0.3")));
+    assertThat(strand("$[*]").sum(huge), comparesEqualTo(new BigDecimal("2e308")));
+    for (Basket numbers : new Basket[] { tenths, huge, mixed }) {
+      BigDecimal folded = BigDecimal.ZERO;
+      for (BigDecimal number : strand("$[*]").getAllNumbers(numbers)) {
+        folded = folded.add(number);
+      }
+      assertThat(strand("$[*]").sum(numbers), comparesEqualTo(folded));
+    }
+    assertThat(strand("$[*]").summarise(huge).getSumAsDouble(), equalTo(Double.POSITIVE_INFINITY));
+  }
+
+  @Test
+  public void countsAndGroups() {
+    Map<Basket, Integer> categories = strand("$..category").countBy(store);
+    assertThat(categories.keySet(), contains(Basket.ofString("reference"), Basket.ofString("fiction")));
+    assertThat(categories.get(Basket.ofString("fiction")), equalTo(3));
+
+    Map<Basket, List<Basket>> byCategory = strand("$..book[*]").groupBy(store, strand("@.category"));
+    assertThat(byCategory.get(Basket.ofString("reference")), contains(REES));
+    assertThat(byCategory.get(Basket.ofString("fiction")), contains(WAUGH, MELVILLE, TOLKIEN));
+
+    Map<Basket, List<Basket>> byIsbn = strand("$..book[*]").groupBy(store, strand("@.isbn"));
+    assertThat(byIsbn.size(), equalTo(2));
+  }
+}
@@ -0,0 +1,84 @@
+package com.codepoetics.raffia.lenses;
+
+import com.codepoetics.raffia.baskets.Basket;
+import kotlin.jvm.functions.Function1;
+import kotlin.sequences.SequencesKt;
+import org.junit.Test;
+
+import static com.codepoetics.raffia.StoreExample.MELVILLE;
+import static com.codepoetics.raffia.StoreExample.REES;
+import static com.codepoetics.raffia.StoreExample.store;
+import static com.codepoetics.raffia.lenses.Strands.strand;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertTrue;
+
+public class StrandCompilerTest {
+
+  @Test
+  public void compiledStrandsMatchInterpretedOnes() {
+    assertTrue(StrandCompiler.isAvailable());
+
+    for (String path : new String[] {
+        "$", "$.store.book[*].author", "$.store.book[-1].title", "$.store.book[0,2,7].price", "$.store.*[*]",
+        "$.store['book', 'bicycle'][*]", "$.store.book[1:3].title", "$..author", "$.store..price",
+        "$.store.book[1:]..isbn", "$.expensive.*", "$.missing.book[0]" }) {
+      Strand strand = strand(path);
+      assertThat(path, StrandCompiler.compile(strand).getAll(store), equalTo(strand.getAll(store)));
+    }
+  }
+
+  @Test
+  public void compiledConditions() {
+    Function1<Basket, Boolean> hasIsbn = new Function1<Basket, Boolean>() {
+      @Override
+      public Boolean invoke(Basket basket) {
+        return basket.containsKey("isbn");
+      }
+    };
+
+    Strand compiled = StrandCompiler.compile(strand("$.store.book[?].title", hasIsbn));
+
+    assertThat(compiled.getAllStrings(store), contains("Moby Dick", "The Lord of the Rings"));
+  }
+
+  @Test
+  public void compiledStrandsStopWhenTheSinkDoes() {
+    final Basket[] first = new Basket[1];
+    boolean completed = StrandCompiler.compile(strand("$.store.book[*]")).forEach(store, new BasketSink() {
+      @Override
+      public boolean accept(Basket basket) {
+        first[0] = basket;
+        return false;
+      }
+    });
+
+    assertThat(completed, equalTo(false));
+    assertThat(first[0], equalTo(REES));
+  }
+
+  @Test
+  public void compiledStrandsAreCachedAndUpdateAsBefore() {
+    Strand compiled = StrandCompiler.compile(strand("$.store.book[2]"));
+
+    assertThat(StrandCompiler.compile(strand("$.store.book[2]")), sameInstance(compiled));
+    assertThat(compiled.getSingle(store), equalTo(MELVILLE));
+    assertThat(compiled.set(store, "replaced"), equalTo(strand("$.store.book[2]").set(store, "replaced")));
+  }
+
+  @Test
+  public void compiledStrandsPageAndCountAsBefore() {
+    for (String path : new String[] { "$.store.book[*].author", "$..price", "$.store.book[1:3]", "$.store.missing" }) {
+      Strand strand = strand(path);
+      Strand compiled = StrandCompiler.compile(strand);
+
+      assertThat(path, compiled.get(store, 1, 2), equalTo(strand.get(store, 1, 2)));
+      assertThat(path, compiled.getFirst(store), equalTo(strand.getFirst(store)));
+      assertThat(path, compiled.exists(store), equalTo(strand.exists(store)));
+      assertThat(path, compiled.count(store), equalTo(strand.count(store)));
+      assertThat(path, SequencesKt.toList(compiled.get(store)), equalTo(strand.getAll(store)));
+    }
+  }
+}
@@ -0,0 +1,89 @@
+package com.codepoetics.raffia.lenses;
+
+import com.codepoetics.raffia.baskets.Basket;
+import com.codepoetics.raffia.baskets.ObjectEntry;
+import kotlin.jvm.functions.Function1;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.codepoetics.raffia.StoreExample.*;
+import static com.codepoetics.raffia.lenses.Strands.strand;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.nullValue;
+
+public class StrandPagingTest {
+
+  private static Basket pages(int count) {
+    List<Basket> items = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      items.add(Basket.ofNumber(new BigDecimal(i)));
+    }
+    return Basket.ofObject(
+        ObjectEntry.of("first", Basket.ofObject(ObjectEntry.of("items", Basket.ofArray(items)))),
+        ObjectEntry.of("second", Basket.ofObject(ObjectEntry.of("items", Basket.ofArray(items)))));
+  }
+
+  @Test
+  public void pagesMatchSlicesOfAllMatches() {
+    Basket basket = pages(50);
+    Strand strand = strand("$..items[*]");
+    List<Basket> all = strand.getAll(basket);
+
+    for (int offset : new int[] { 0, 1, 20, 49, 50, 51, 95, 100, 150 }) {
+      List<Basket> expected = all.subList(Math.min(offset, all.size()), Math.min(offset + 20, all.size()));
+      assertThat("offset " + offset, strand.get(basket, offset, 20), equalTo(expected));
+    }
+  }
+
+  @Test
+  public void pagesSkipThroughEveryKindOfStep() {
+    assertThat(strand("$.store.book[1:]").get(store, 1, 5), contains(MELVILLE, TOLKIEN));
+    assertThat(strand("$.store.book[3,0,1]").get(store, 1, 1), contains(REES));
+    assertThat(strand("$.store.book[0].*").get(store, 2, 1), contains(Basket.ofString("Sayings of the Century")));
+    assertThat(strand("$..book[?(@.isbn)]").get(store, 1, 1), contains(TOLKIEN));
+    assertThat(strand("$.store.book[*]").get(store, 0, 0), empty());
+  }
+
+  @Test
+  public void traversalStopsOnceEnoughMatchesAreFound() {
+    final List<Basket> tested = new ArrayList<>();
+    Function1<Basket, Boolean> recordingTest = new Function1<Basket, Boolean>() {
+      @Override
+      public Boolean invoke(Basket basket) {
+        tested.add(basket);
+        return true;
+      }
+    };
+
+    assertThat(strand("$.store.book[?]", recordingTest).getFirst(store), equalTo(REES));
+    assertThat(tested, contains(REES));
+  }
+
+  @Test
+  public void firstExistsAndCount() {
+    Basket basket = pages(50);
+
+    assertThat(strand("$..items[*]").count(basket), equalTo(100));
+    assertThat(strand("$..items[10:20]").count(basket), equalTo(20));
+    assertThat(strand("$..items[20:10]").count(basket), equalTo(0));
+    assertThat(strand("$.store.book[0].*").count(store), equalTo(4));
+    assertThat(strand("$..book[?(@.price < 10)]").count(store), equalTo(2));
+
+    assertThat(strand("$..author").getFirst(store), equalTo(Basket.ofString("Nigel Rees")));
+    assertThat(strand("$..missing").getFirst(store), nullValue());
+
+    assertThat(strand("$..isbn").exists(store), equalTo(true));
+    assertThat(strand("$..missing").exists(store), equalTo(false));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void getSingleStillRejectsSeveralMatches() {
+    strand("$..author").getSingle(store);
+  }
+}
@@ -0,0 +1,97 @@
+package com.codepoetics.raffia.lenses;
+
+import com.codepoetics.raffia.baskets.Basket;
+import kotlin.jvm.functions.Function1;
+import kotlin.sequences.SequencesKt;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.codepoetics.raffia.StoreExample.MELVILLE;
+import static com.codepoetics.raffia.StoreExample.REES;
+import static com.codepoetics.raffia.StoreExample.TOLKIEN;
+import static com.codepoetics.raffia.StoreExample.WAUGH;
+import static com.codepoetics.raffia.StoreExample.store;
+import static com.codepoetics.raffia.lenses.Strands.strand;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.hasSize;
+
+public class StrandPlanTest {
+
+  @Test
+  public void collectingAPlan() {
+    assertThat(strand("$.store.book[-1,0,7]").compile().collect(store), contains(TOLKIEN, REES));
+    assertThat(strand("$.store..isbn").compile().collect(store),
+        contains(Basket.ofString("0-553-21311-3"), Basket.ofString("0-395-19395-8")));
+    assertThat(strand("$").compile().collect(store), contains(store));
+  }
+
+  @Test
+  public void deepWildcardsVisitEachContainersValuesBeforeTheirDescendants() {
+    List<Basket> everything = strand("$.store.bicycle").toEverything().compile().collect(store);
+
+    assertThat(everything, hasSize(5));
+    assertThat(everything.get(0), equalTo(strand("$.store.bicycle[0]").getSingle(store)));
+  }
+
+  @Test
+  public void sinksCanStopTheTraversal() {
+    final List<Basket> seen = new ArrayList<>();
+    boolean completed = strand("$..book[*]").forEach(store, new BasketSink() {
+      @Override
+      public boolean accept(Basket basket) {
+        seen.add(basket);
+        return seen.size() < 2;
+      }
+    });
+
+    assertThat(completed, equalTo(false));
+    assertThat(seen, contains(REES, WAUGH));
+  }
+
+  @Test
+  public void sinksWhichNeverStopSeeEveryMatch() {
+    final List<Basket> seen = new ArrayList<>();
+    boolean completed = strand("$.store.book[1:3]").forEach(store, new BasketSink() {
+      @Override
+      public boolean accept(Basket basket) {
+        return seen.add(basket);
+      }
+    });
+
+    assertThat(completed, equalTo(true));
+    assertThat(seen, contains(WAUGH, MELVILLE));
+  }
+
+  @Test
+  public void gettingMatchesWalksOnlyAsFarAsTheMatchesTaken() {
+    final List<Basket> tested = new ArrayList<>();
+    Strand strand = strand("$..book").toMatching(new Function1<Basket, Boolean>() {
+      @Override
+      public Boolean invoke(Basket basket) {
+        tested.add(basket);
+        return true;
+      }
+    }).to("title");
+
+    assertThat(SequencesKt.first(strand.get(store)), equalTo(REES.getProperty("title")));
+    assertThat(tested, contains(REES));
+  }
+
+  @Test
+  public void gettingMatchesFindsWhatCollectingFinds() {
+    for (String path : new String[] { "$.store.book[-1,0,7]", "$..price", "$..book[1:3].title",
+        "$..book[?(@.isbn)].author", "$.store.bicycle.color", "$[*]" }) {
+      Strand strand = strand(path);
+      assertThat(path, SequencesKt.toList(strand.get(store)), equalTo(strand.compile().collect(store)));
+    }
+
+    for (Strand strand : new Strand[] { strand("$.store").toEverything(), strand("$.store").toEverything(2) }) {
+      assertThat(SequencesKt.toList(strand.get(store)), equalTo(strand.compile().collect(store)));
+    }
+    assertThat(SequencesKt.toList(strand("$.store.bicycle[0]").toEverything(1).get(store)), hasSize(2));
+  }
+}
@@ -0,0 +1,95 @@
+package com.codepoetics.raffia.lenses;
+
+import com.codepoetics.raffia.baskets.Basket;
+import com.codepoetics.raffia.baskets.ObjectEntry;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.stream.Collectors;
+
+import static com.codepoetics.raffia.StoreExample.store;
+import static com.codepoetics.raffia.lenses.Strands.strand;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.notNullValue;
+
+public class StrandStreamTest {
+
+  private static final Basket ITEMS = items(10000);
+
+  private static Basket items(int count) {
+    List<Basket> items = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      items.add(Basket.ofObject(
+          ObjectEntry.of("n", Basket.ofNumber(new BigDecimal(i))),
+          ObjectEntry.of("even", Basket.ofBoolean(i % 2 == 0))));
+    }
+    return Basket.ofObject(ObjectEntry.of("items", Basket.ofArray(items)));
+  }
+
+  @Test
+  public void streamsContainTheStrandsMatchesInOrder() {
+    String[] paths = {
+        "$.store.book[*].author",
+        "$.store.book[1:3].title",
+        "$..book[?(@.isbn)].title",
+        "$..price",
+        "$.store.*",
+        "$.store.book[0,2]",
+        "$.store.bicycle",
+        "$.missing[*]"
+    };
+
+    for (String path : paths) {
+      Strand strand = strand(path);
+      assertThat(path, strand.stream(store).collect(Collectors.<Basket>toList()), equalTo(strand.getAll(store)));
+      assertThat(path, strand.stream(store).parallel().collect(Collectors.<Basket>toList()), equalTo(strand.getAll(store)));
+    }
+  }
+
+  @Test
+  public void wildcardsOverArraysAreSizedAndSplit() {
+    Spliterator<Basket> spliterator = strand("$.items[*]").spliterator(ITEMS);
+
+    assertThat(spliterator.hasCharacteristics(Spliterator.SIZED), equalTo(true));
+    assertThat(spliterator.getExactSizeIfKnown(), equalTo(10000L));
+
+    Spliterator<Basket> prefix = spliterator.trySplit();
+    assertThat(prefix, notNullValue());
+    assertThat(prefix.getExactSizeIfKnown(), equalTo(5000L));
+    assertThat(spliterator.getExactSizeIfKnown(), equalTo(5000L));
+  }
+
+  @Test
+  public void emptyAndInvertedSlicesStreamNothing() {
+    for (String path : new String[] { "$.items[3:1]", "$.items[5:5]", "$.items[-1:2]" }) {
+      Strand strand = strand(path);
+
+      assertThat(path, strand.stream(ITEMS).count(), equalTo(0L));
+      assertThat(path, strand.spliterator(ITEMS).estimateSize(), equalTo(0L));
+      assertThat(path, strand.stream(ITEMS).parallel().count(), equalTo((long) strand.count(ITEMS)));
+    }
+  }
+
+  @Test
+  public void filteredStreamsSplitButAreNotSized() {
+    Spliterator<Basket> spliterator = strand("$.items[?(@.even == true)].n").spliterator(ITEMS);
+
+    assertThat(spliterator.hasCharacteristics(Spliterator.SIZED), equalTo(false));
+    assertThat(spliterator.trySplit(), notNullValue());
+
+    long total = strand("$.items[?(@.even == true)].n").stream(ITEMS).parallel().count();
+    assertThat(total, equalTo(5000L));
+  }
+
+  @Test
+  public void strandsWhichDoNotFanOutAreNotSized() {
+    Strand strand = strand("$.items[0,1]");
+
+    assertThat(strand.spliterator(ITEMS).hasCharacteristics(Spliterator.SIZED), equalTo(false));
+    assertThat(strand.stream(ITEMS).collect(Collectors.<Basket>toList()), equalTo(strand.getAll(ITEMS)));
+  }
+}
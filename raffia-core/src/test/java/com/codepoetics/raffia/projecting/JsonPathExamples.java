@@ -1,6 +1,7 @@
 package com.codepoetics.raffia.projecting;
 
 import com.codepoetics.raffia.baskets.Basket;
+import com.codepoetics.raffia.lenses.Strand;
 import com.codepoetics.raffia.operations.Updaters;
 import kotlin.jvm.functions.Function1;
 import org.jetbrains.annotations.NotNull;
@@ -167,6 +168,41 @@ public class JsonPathExamples {
         contains(REES, MELVILLE));
   }
 
+  @Test
+  public void getBooksWithIsbnsUsingAFilterExpression() {
+    assertThat(strand("$..book[?(@.isbn)]").getAll(store), contains(MELVILLE, TOLKIEN));
+  }
+
+  @Test
+  public void getCheapBooksUsingAFilterExpression() {
+    assertThat(strand("$..book[?(@.price < 10)]").getAll(store), contains(REES, MELVILLE));
+    assertThat(strand("$..book[?(10 > @.price)]").getAll(store), contains(REES, MELVILLE));
+  }
+
+  @Test
+  public void getCheapFictionUsingAFilterExpression() {
+    assertThat(
+        strand("$..book[?(@.price < 10 && @.category == 'fiction')]").getAll(store),
+        contains(MELVILLE));
+  }
+
+  @Test
+  public void combiningFilterExpressions() {
+    assertThat(
+        strand("$..book[?(@.category != \"fiction\" || (@.price >= 20 && !(@.author == 'Nigel Rees')))].title").getAllStrings(store),
+        contains("Sayings of the Century", "The Lord of the Rings"));
+    assertThat(
+        strand("$..book[?(@.title == 'Why (and how)?')]").getAll(store),
+        hasSize(0));
+  }
+
+  @Test
+  public void filterExpressionsAppearInPaths() {
+    Strand cheapestFirst = strand("$..book[?((@.price > 20 || @.price < 5) && @.category == 'fiction')]");
+    assertThat(cheapestFirst.getPath(), equalTo("$..book[?(@.category == 'fiction' && (@.price > 20 || @.price < 5))]"));
+    assertThat(cheapestFirst.getAll(store), contains(TOLKIEN));
+  }
+
   /*
   @Test
   public void getArbitrarilyCheapBooks() {
@@ -2,6 +2,10 @@ package com.codepoetics.raffia.jackson;
 
 import com.codepoetics.raffia.Raffia;
 import com.codepoetics.raffia.baskets.Basket;
+import com.codepoetics.raffia.baskets.BasketInterner;
+import com.codepoetics.raffia.baskets.KeyDictionary;
+import com.codepoetics.raffia.lenses.Strand;
+import com.codepoetics.raffia.writers.BasketWeavingWriter;
 import com.codepoetics.raffia.writers.BasketWriter;
 import com.codepoetics.raffia.writers.Writers;
 import com.fasterxml.jackson.core.JsonFactory;
@@ -12,6 +16,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.Reader;
 import java.math.BigDecimal;
+import java.nio.charset.Charset;
 
 public final class JsonReader {
 
@@ -29,6 +34,55 @@ public final class JsonReader {
     return readWith(reader, Writers.weavingTransient()).weave();
   }
 
+  public static Basket readBasket(String json, BasketInterner interner) {
+    return readWith(json, Writers.weavingTransient(interner)).weave();
+  }
+
+  public static Basket readBasket(InputStream inputStream, BasketInterner interner) throws IOException {
+    return readWith(inputStream, Writers.weavingTransient(interner)).weave();
+  }
+
+  public static Basket readBasket(Reader reader, BasketInterner interner) throws IOException {
+    return readWith(reader, Writers.weavingTransient(interner)).weave();
+  }
+
+  /**
+   * Reads a basket whose arrays and objects retain the source bytes, and are only parsed, one level at a time, when
+   * first accessed. Untouched parts are written back out verbatim by {@link JsonWriter}.
+   */
+  public static Basket readBasketLazily(byte[] json) {
+    return RawJson.read(json);
+  }
+
+  public static Basket readBasketLazily(String json) {
+    return readBasketLazily(json.getBytes(Charset.forName("UTF-8")));
+  }
+
+  /**
+   * Reads only the values the given strands could match, within a skeleton of the objects and arrays enclosing them.
+   * Evaluating any of the strands against the result gives the same matches as evaluating it against the whole document,
+   * save that skipped array items are kept as nulls, which a predicate matching null would also match.
+   */
+  public static Basket readProjected(String json, Strand... strands) {
+    try {
+      return readProjected(FACTORY.createParser(json), strands);
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  public static Basket readProjected(InputStream inputStream, Strand... strands) throws IOException {
+    return readProjected(FACTORY.createParser(inputStream), strands);
+  }
+
+  public static Basket readProjected(Reader reader, Strand... strands) throws IOException {
+    return readProjected(FACTORY.createParser(reader), strands);
+  }
+
+  public static Basket readProjected(JsonParser parser, Strand... strands) throws IOException {
+    return new ProjectingReader(strands).read(parser);
+  }
+
   public static <T extends BasketWriter<T>> T readWith(String json, T writer) {
     try {
       return readWith(FACTORY.createParser(json), writer);
@@ -54,6 +108,26 @@ public final class JsonReader {
     return result;
   }
 
+  /**
+   * Reads the single value starting at the parser's current token, leaving the parser on that value's last token.
+   */
+  static Basket readCurrentValue(JsonParser parser) throws IOException {
+    JsonToken token = parser.getCurrentToken();
+    BasketWeavingWriter writer = writeToken(parser, token, Writers.weavingTransient());
+
+    int depth = token.isStructStart() ? 1 : 0;
+    while (depth > 0) {
+      token = parser.nextToken();
+      if (token.isStructStart()) {
+        depth++;
+      } else if (token.isStructEnd()) {
+        depth--;
+      }
+      writer = writeToken(parser, token, writer);
+    }
+    return writer.weave();
+  }
+
   private static <T extends BasketWriter<T>> T readToken(JsonParser parser, T writer) throws IOException {
     JsonToken token = parser.nextToken();
 
@@ -61,6 +135,10 @@ public final class JsonReader {
       return writer;
     }
 
+    return writeToken(parser, token, writer);
+  }
+
+  private static <T extends BasketWriter<T>> T writeToken(JsonParser parser, JsonToken token, T writer) throws IOException {
     switch (token) {
       case START_ARRAY:
         return writer.beginArray();
@@ -71,13 +149,15 @@ public final class JsonReader {
       case END_OBJECT:
         return writer.end();
       case FIELD_NAME:
-        return writer.key(parser.getCurrentName());
+        return writer.key(KeyDictionary.intern(parser.getCurrentName()));
       case VALUE_STRING:
         return writer.add(parser.getText());
       case VALUE_NUMBER_FLOAT:
-        return writer.add(BigDecimal.valueOf(parser.getDoubleValue()));
+        return writer.add(parser.getDoubleValue());
       case VALUE_NUMBER_INT:
-        return writer.add(BigDecimal.valueOf(parser.getIntValue()));
+        return parser.getNumberType() == JsonParser.NumberType.BIG_INTEGER
+            ? writer.add(new BigDecimal(parser.getBigIntegerValue()))
+            : writer.add(parser.getLongValue());
       case VALUE_TRUE:
         return writer.add(true);
       case VALUE_FALSE:
@@ -1,6 +1,7 @@
 package com.codepoetics.raffia.jackson
 
 import com.codepoetics.raffia.baskets.Basket
+import com.codepoetics.raffia.baskets.BasketType
 import com.codepoetics.raffia.writers.BasketWriter
 import com.codepoetics.raffia.writers.writeTo
 import com.fasterxml.jackson.core.JsonFactory
@@ -55,6 +56,23 @@ class JsonWriter private constructor(private val generator: JsonGenerator) : Bas
             else -> throw IllegalStateException("exit called without matching startArray or startObject")
         }
 
+    /**
+     * Writes a basket, copying any arrays and objects which are still pending in their raw JSON source verbatim.
+     */
+    fun add(basket: Basket): JsonWriter = when (basket.getType()) {
+        BasketType.ARRAY -> basket.asArray().let { contents ->
+            val raw = contents.pendingSource as? RawJson
+            if (raw != null) update { generator.writeRawValue(raw.text()) }
+            else contents.fold(beginArray(), JsonWriter::add).end()
+        }
+        BasketType.OBJECT -> basket.asObject().let { properties ->
+            val raw = properties.pendingSource as? RawJson
+            if (raw != null) update { generator.writeRawValue(raw.text()) }
+            else properties.fold(beginObject()) { writer, (key, value) -> writer.key(key).add(value) }.end()
+        }
+        else -> basket.writeTo(this)
+    }
+
     override fun key(key: String): JsonWriter = apply {
         generator.writeFieldName(key)
     }
@@ -67,6 +85,14 @@ class JsonWriter private constructor(private val generator: JsonGenerator) : Bas
         generator.writeNumber(value)
     }
 
+    override fun add(value: Long): JsonWriter = update {
+        generator.writeNumber(value)
+    }
+
+    override fun add(value: Double): JsonWriter = update {
+        generator.writeNumber(value)
+    }
+
     override fun add(value: Boolean): JsonWriter = update {
         generator.writeBoolean(value)
     }
@@ -95,12 +121,12 @@ class JsonWriter private constructor(private val generator: JsonGenerator) : Bas
 
         @JvmStatic
         @JvmOverloads fun writeBasketTo(basket: Basket, outputStream: OutputStream, jsonFactory: JsonFactory = DEFAULT): JsonWriter {
-            return basket.writeTo(writingTo(jsonFactory, outputStream))
+            return writingTo(jsonFactory, outputStream).add(basket)
         }
 
         @JvmStatic
         @JvmOverloads fun writeBasketTo(basket: Basket, writer: Writer, jsonFactory: JsonFactory = DEFAULT): JsonWriter {
-            return basket.writeTo(writingTo(jsonFactory, writer))
+            return writingTo(jsonFactory, writer).add(basket)
         }
 
         @JvmStatic
@@ -0,0 +1,305 @@
+package com.codepoetics.raffia.jackson;
+
+import com.codepoetics.raffia.baskets.ArrayContents;
+import com.codepoetics.raffia.baskets.Basket;
+import com.codepoetics.raffia.baskets.KeyDictionary;
+import com.codepoetics.raffia.baskets.ObjectEntry;
+import com.codepoetics.raffia.baskets.PropertySet;
+import com.codepoetics.raffia.lenses.ArraySliceStrand;
+import com.codepoetics.raffia.lenses.ConditionalStrand;
+import com.codepoetics.raffia.lenses.DeepScanStrand;
+import com.codepoetics.raffia.lenses.IndexStrand;
+import com.codepoetics.raffia.lenses.KeyStrand;
+import com.codepoetics.raffia.lenses.Strand;
+import com.codepoetics.raffia.lenses.Strands;
+import com.codepoetics.raffia.lenses.WildcardStrand;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads only the parts of a document which a set of strands could match, together with the objects and arrays
+ * enclosing them. Everything else is skipped by the parser without being read.
+ *
+ * Array items which are skipped are replaced by nulls, so that indices within the projection are those of the source
+ * document. Where a step cannot be decided without reading further (slices, negative indices, deep wildcards) the
+ * projection errs on the side of keeping values.
+ */
+final class ProjectingReader {
+
+  /**
+   * Stands in for skipped array items.
+   */
+  private static final Basket NOTHING = Basket.ofNull();
+
+  private final List<List<Strand>> strands = new ArrayList<>();
+
+  ProjectingReader(Strand... strands) {
+    for (Strand strand : strands) {
+      this.strands.add(Strands.steps(strand));
+    }
+  }
+
+  Basket read(JsonParser parser) throws IOException {
+    if (parser.nextToken() == null) {
+      throw new IllegalArgumentException("No JSON value found");
+    }
+
+    List<Position> start = new ArrayList<>();
+    for (int i = 0; i < strands.size(); i++) {
+      start.add(new Position(i, 0));
+    }
+    Basket projected = project(parser, start);
+    return projected == null ? Basket.ofNull() : projected;
+  }
+
+  /**
+   * Projects the value at the parser's current token, or returns null if nothing within it is wanted.
+   */
+  private Basket project(JsonParser parser, List<Position> positions) throws IOException {
+    if (positions.isEmpty()) {
+      parser.skipChildren();
+      return null;
+    }
+    if (includesWhole(positions)) {
+      return JsonReader.readCurrentValue(parser);
+    }
+
+    switch (parser.getCurrentToken()) {
+      case START_OBJECT: {
+        List<ObjectEntry> entries = new ArrayList<>();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+          String key = KeyDictionary.intern(parser.getCurrentName());
+          parser.nextToken();
+          Basket value = hasConditional(positions)
+              ? projectCandidate(JsonReader.readCurrentValue(parser), positions, key, -1)
+              : project(parser, advance(positions, key, -1));
+          if (value != null) {
+            entries.add(ObjectEntry.of(key, value));
+          }
+        }
+        return entries.isEmpty() && onlyScanning(positions) ? null : Basket.ofObject(PropertySet.of(entries));
+      }
+      case START_ARRAY: {
+        List<Basket> items = new ArrayList<>();
+        int index = 0;
+        while (parser.nextToken() != JsonToken.END_ARRAY) {
+          Basket item = hasConditional(positions)
+              ? projectCandidate(JsonReader.readCurrentValue(parser), positions, null, index)
+              : project(parser, advance(positions, null, index));
+          items.add(item == null ? NOTHING : item);
+          index++;
+        }
+        return onlyScanning(positions) && allSkipped(items) ? null : Basket.ofArray(ArrayContents.of(items));
+      }
+      default: {
+        Basket scalar = JsonReader.readCurrentValue(parser);
+        return matchesScalar(scalar, positions) ? scalar : null;
+      }
+    }
+  }
+
+  /**
+   * Projects a value which has already been read, so that conditional steps can test it.
+   */
+  private Basket projectCandidate(Basket candidate, List<Position> positions, String key, int index) {
+    List<Position> next = advance(positions, key, index);
+    for (Position position : positions) {
+      Strand step = stepAt(position);
+      if (step instanceof ConditionalStrand && ((ConditionalStrand) step).getPredicate().invoke(candidate)) {
+        add(next, position.strand, position.step + 1);
+      }
+    }
+    return project(candidate, next);
+  }
+
+  private Basket project(Basket basket, List<Position> positions) {
+    if (positions.isEmpty()) {
+      return null;
+    }
+    if (includesWhole(positions)) {
+      return basket;
+    }
+
+    if (basket.isObject()) {
+      List<ObjectEntry> entries = new ArrayList<>();
+      for (ObjectEntry entry : basket.asObject()) {
+        Basket value = projectCandidate(entry.getValue(), positions, entry.getKey(), -1);
+        if (value != null) {
+          entries.add(ObjectEntry.of(entry.getKey(), value));
+        }
+      }
+      return entries.isEmpty() && onlyScanning(positions) ? null : Basket.ofObject(PropertySet.of(entries));
+    }
+
+    if (basket.isArray()) {
+      List<Basket> items = new ArrayList<>();
+      int index = 0;
+      for (Basket item : basket.asArray()) {
+        Basket projected = projectCandidate(item, positions, null, index++);
+        items.add(projected == null ? NOTHING : projected);
+      }
+      return onlyScanning(positions) && allSkipped(items) ? null : Basket.ofArray(ArrayContents.of(items));
+    }
+
+    return matchesScalar(basket, positions) ? basket : null;
+  }
+
+  /**
+   * The positions reached by passing from a container to its property with the given key, or if the key is null, to
+   * its item at the given index. Conditional steps are left to the caller, which must read the value to test it.
+   */
+  private List<Position> advance(List<Position> positions, String key, int index) {
+    List<Position> next = new ArrayList<>();
+    for (Position position : positions) {
+      Strand step = stepAt(position);
+      int strand = position.strand;
+      if (step instanceof KeyStrand) {
+        if (key != null && contains(((KeyStrand) step).getKeys(), key)) {
+          add(next, strand, position.step + 1);
+        }
+      } else if (step instanceof IndexStrand) {
+        if (key == null && mayContain(((IndexStrand) step).getIndices(), index)) {
+          add(next, strand, position.step + 1);
+        }
+      } else if (step instanceof ArraySliceStrand) {
+        if (key == null) {
+          add(next, strand, position.step + 1);
+        }
+      } else if (step instanceof WildcardStrand) {
+        add(next, strand, position.step + 1);
+      } else if (step instanceof DeepScanStrand) {
+        if (key != null && key.equals(((DeepScanStrand) step).getKey())) {
+          add(next, strand, position.step + 1);
+        } else {
+          add(next, strand, position.step);
+        }
+      }
+    }
+    return next;
+  }
+
+  /**
+   * Whether any position wants the whole of the current value: because its strand is complete, or because its next
+   * step can only be decided by reading everything beneath.
+   */
+  private boolean includesWhole(List<Position> positions) {
+    for (Position position : positions) {
+      Strand step = stepAt(position);
+      if (step == null || !(step instanceof KeyStrand || step instanceof IndexStrand || step instanceof ArraySliceStrand
+          || step instanceof WildcardStrand || step instanceof DeepScanStrand || step instanceof ConditionalStrand)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Whether the only strands passing through a value are scanning beneath it, so that if nothing was found there the
+   * value itself can be left out.
+   */
+  private boolean onlyScanning(List<Position> positions) {
+    for (Position position : positions) {
+      if (!(stepAt(position) instanceof DeepScanStrand)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static boolean allSkipped(List<Basket> items) {
+    for (Basket item : items) {
+      if (item != NOTHING) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private boolean hasConditional(List<Position> positions) {
+    for (Position position : positions) {
+      if (stepAt(position) instanceof ConditionalStrand) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Whether a scalar completes any strand: wildcards pass a scalar through unchanged, as do conditions it satisfies.
+   */
+  private boolean matchesScalar(Basket scalar, List<Position> positions) {
+    for (Position position : positions) {
+      List<Strand> steps = strands.get(position.strand);
+      int step = position.step;
+      while (step < steps.size() && passesThrough(steps.get(step), scalar)) {
+        step++;
+      }
+      if (step == steps.size()) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static boolean passesThrough(Strand step, Basket scalar) {
+    return step instanceof WildcardStrand
+        || (step instanceof ConditionalStrand && ((ConditionalStrand) step).getPredicate().invoke(scalar));
+  }
+
+  private Strand stepAt(Position position) {
+    List<Strand> steps = strands.get(position.strand);
+    return position.step < steps.size() ? steps.get(position.step) : null;
+  }
+
+  private static void add(List<Position> positions, int strand, int step) {
+    Position position = new Position(strand, step);
+    if (!positions.contains(position)) {
+      positions.add(position);
+    }
+  }
+
+  private static boolean contains(String[] keys, String key) {
+    for (String candidate : keys) {
+      if (candidate.equals(key)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static boolean mayContain(int[] indices, int index) {
+    for (int candidate : indices) {
+      if (candidate == index || candidate < 0) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * How far along one of the strands a value lies.
+   */
+  private static final class Position {
+    private final int strand;
+    private final int step;
+
+    private Position(int strand, int step) {
+      this.strand = strand;
+      this.step = step;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      return o instanceof Position && ((Position) o).strand == strand && ((Position) o).step == step;
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * strand + step;
+    }
+  }
+}
@@ -0,0 +1,255 @@
+package com.codepoetics.raffia.jackson;
+
+import com.codepoetics.raffia.baskets.ArrayContents;
+import com.codepoetics.raffia.baskets.Basket;
+import com.codepoetics.raffia.baskets.Deferred;
+import com.codepoetics.raffia.baskets.KeyDictionary;
+import com.codepoetics.raffia.baskets.ObjectEntry;
+import com.codepoetics.raffia.baskets.PropertySet;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * A span of a retained JSON document holding a single array or object, which is parsed one level at a time as it is
+ * first touched.
+ *
+ * The document is tokenised once, up front, to record the span of every container and which of each container's
+ * children are containers themselves. Loading a level then reads it with a single parser, decoding its scalars and
+ * skipping over nested containers, whose baskets are made from their recorded spans.
+ */
+abstract class RawJson {
+
+  private static final JsonFactory FACTORY = new JsonFactory();
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+  private final byte[] bytes;
+  private final int start;
+  private final int end;
+  private final int size;
+  /**
+   * The spans of the children which are containers, or null if none are.
+   */
+  private final RawJson[] childSpans;
+
+  private RawJson(byte[] bytes, int start, int end, int size, RawJson[] childSpans) {
+    this.bytes = bytes;
+    this.start = start;
+    this.end = end;
+    this.size = size;
+    this.childSpans = childSpans;
+  }
+
+  String text() {
+    return new String(bytes, start, end - start, UTF_8);
+  }
+
+  static Basket read(byte[] bytes) {
+    try (JsonParser parser = FACTORY.createParser(bytes)) {
+      JsonToken token = parser.nextToken();
+      if (token == null) {
+        throw new IllegalArgumentException("No JSON value found");
+      }
+      return token == JsonToken.START_ARRAY || token == JsonToken.START_OBJECT
+          ? index(parser, bytes).basket()
+          : readScalar(parser);
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  abstract Basket basket();
+
+  int size() {
+    return size;
+  }
+
+  /**
+   * Reads the children in order, passing each to the visitor.
+   */
+  void readChildren(ChildVisitor visitor) throws IOException {
+    try (JsonParser parser = FACTORY.createParser(bytes, start, end - start)) {
+      parser.nextToken();
+      int index = 0;
+      for (JsonToken token = parser.nextToken(); token != JsonToken.END_ARRAY && token != JsonToken.END_OBJECT;
+           token = parser.nextToken()) {
+        if (token == JsonToken.FIELD_NAME) {
+          continue;
+        }
+        if (token == JsonToken.START_ARRAY || token == JsonToken.START_OBJECT) {
+          parser.skipChildren();
+          visitor.visit(index, childSpans[index].basket());
+        } else {
+          visitor.visit(index, readScalar(parser));
+        }
+        index++;
+      }
+    }
+  }
+
+  interface ChildVisitor {
+    void visit(int index, Basket value);
+  }
+
+  /**
+   * Records the spans of the container at the parser's current token and of every container within it, with an
+   * explicit stack so that deep nesting cannot overflow the call stack.
+   */
+  private static RawJson index(JsonParser parser, byte[] bytes) throws IOException {
+    Deque<Builder> stack = new ArrayDeque<>();
+    stack.push(new Builder(parser.getCurrentToken() == JsonToken.START_OBJECT, offset(parser)));
+
+    while (true) {
+      JsonToken token = parser.nextToken();
+      Builder builder = stack.peek();
+      switch (token) {
+        case FIELD_NAME:
+          builder.keys.add(KeyDictionary.intern(parser.getCurrentName()));
+          break;
+        case START_ARRAY:
+        case START_OBJECT:
+          builder.addChild();
+          stack.push(new Builder(token == JsonToken.START_OBJECT, offset(parser)));
+          break;
+        case END_ARRAY:
+        case END_OBJECT:
+          stack.pop();
+          RawJson span = builder.build(bytes, (int) parser.getCurrentLocation().getByteOffset());
+          if (stack.isEmpty()) {
+            return span;
+          }
+          stack.peek().setLastChild(span);
+          break;
+        default:
+          builder.addChild();
+      }
+    }
+  }
+
+  private static int offset(JsonParser parser) {
+    return (int) parser.getTokenLocation().getByteOffset();
+  }
+
+  private static final class Builder {
+    private final boolean isObject;
+    private final int start;
+    private final List<String> keys = new ArrayList<>();
+    private RawJson[] spans;
+    private int size;
+
+    Builder(boolean isObject, int start) {
+      this.isObject = isObject;
+      this.start = start;
+    }
+
+    void addChild() {
+      size++;
+    }
+
+    void setLastChild(RawJson span) {
+      if (spans == null) {
+        spans = new RawJson[Math.max(8, size)];
+      } else if (spans.length < size) {
+        spans = Arrays.copyOf(spans, Math.max(spans.length * 2, size));
+      }
+      spans[size - 1] = span;
+    }
+
+    RawJson build(byte[] bytes, int end) {
+      RawJson[] childSpans = spans == null ? null : Arrays.copyOf(spans, size);
+      return isObject
+          ? new ObjectSpan(bytes, start, end, size, childSpans, keys.toArray(new String[size]))
+          : new ArraySpan(bytes, start, end, size, childSpans);
+    }
+  }
+
+  private static Basket readScalar(JsonParser parser) throws IOException {
+    JsonToken token = parser.getCurrentToken();
+    switch (token) {
+      case VALUE_STRING:
+        return Basket.ofString(parser.getText());
+      case VALUE_NUMBER_FLOAT:
+        return Basket.ofNumber(parser.getDoubleValue());
+      case VALUE_NUMBER_INT:
+        return parser.getNumberType() == JsonParser.NumberType.BIG_INTEGER
+            ? Basket.ofNumber(new BigDecimal(parser.getBigIntegerValue()))
+            : Basket.ofNumber(parser.getLongValue());
+      case VALUE_TRUE:
+        return Basket.ofBoolean(true);
+      case VALUE_FALSE:
+        return Basket.ofBoolean(false);
+      case VALUE_NULL:
+        return Basket.ofNull();
+      default:
+        throw new IllegalStateException("Unexpected token " + token + " when reading value");
+    }
+  }
+
+  static final class ArraySpan extends RawJson implements Deferred<ArrayContents> {
+
+    private ArraySpan(byte[] bytes, int start, int end, int size, RawJson[] childSpans) {
+      super(bytes, start, end, size, childSpans);
+    }
+
+    @Override
+    Basket basket() {
+      return Basket.ofArray(ArrayContents.deferred(this));
+    }
+
+    @Override
+    public ArrayContents load() {
+      final List<Basket> items = new ArrayList<>(size());
+      try {
+        readChildren(new ChildVisitor() {
+          @Override
+          public void visit(int index, Basket value) {
+            items.add(value);
+          }
+        });
+      } catch (IOException e) {
+        throw new RuntimeException(e);
+      }
+      return ArrayContents.of(items);
+    }
+  }
+
+  static final class ObjectSpan extends RawJson implements Deferred<PropertySet> {
+
+    private final String[] keys;
+
+    private ObjectSpan(byte[] bytes, int start, int end, int size, RawJson[] childSpans, String[] keys) {
+      super(bytes, start, end, size, childSpans);
+      this.keys = keys;
+    }
+
+    @Override
+    Basket basket() {
+      return Basket.ofObject(PropertySet.deferred(this));
+    }
+
+    @Override
+    public PropertySet load() {
+      final List<ObjectEntry> entries = new ArrayList<>(size());
+      try {
+        readChildren(new ChildVisitor() {
+          @Override
+          public void visit(int index, Basket value) {
+            entries.add(ObjectEntry.of(keys[index], value));
+          }
+        });
+      } catch (IOException e) {
+        throw new RuntimeException(e);
+      }
+      return PropertySet.of(entries);
+    }
+  }
+}
@@ -0,0 +1,329 @@
+package com.codepoetics.raffia.jackson;
+
+import com.codepoetics.raffia.baskets.Basket;
+import com.codepoetics.raffia.lenses.BasketSink;
+import com.codepoetics.raffia.lenses.ConditionalStrand;
+import com.codepoetics.raffia.lenses.DeepScanStrand;
+import com.codepoetics.raffia.lenses.IndexStrand;
+import com.codepoetics.raffia.lenses.KeyStrand;
+import com.codepoetics.raffia.lenses.RootStrand;
+import com.codepoetics.raffia.lenses.Strand;
+import com.codepoetics.raffia.lenses.StrandPlan;
+import com.codepoetics.raffia.lenses.Strands;
+import com.codepoetics.raffia.lenses.WildcardStrand;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import kotlin.jvm.functions.Function1;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Evaluates a strand directly against a stream of JSON tokens, without reading the document into a basket. Subtrees
+ * which cannot contain a match are skipped, and only matched values are read as baskets, so memory use is bounded by
+ * the size of the matches rather than of the document.
+ *
+ * Key, index, wildcard and deep scan steps are followed through the stream. A conditional step reads each candidate
+ * in turn to test it, and steps which need a whole array at once (slices, negative indices) or a whole subtree (deep
+ * wildcards) read the value they apply to; either way the rest of the strand is then evaluated against that basket.
+ * Matches are produced in the same order as the strand's own {@code getAll}.
+ */
+public final class StreamingQuery {
+
+  private static final JsonFactory FACTORY = new JsonFactory();
+
+  public static StreamingQuery of(String path) {
+    return of(Strands.strand(path));
+  }
+
+  public static StreamingQuery of(Strand strand) {
+    return new StreamingQuery(Strands.steps(strand));
+  }
+
+  private final List<Strand> steps;
+  private final StrandPlan[] remainders;
+
+  private StreamingQuery(List<Strand> steps) {
+    this.steps = steps;
+    this.remainders = new StrandPlan[steps.size() + 1];
+
+    Strand remainder = RootStrand.INSTANCE;
+    for (int i = steps.size(); i >= 0; i--) {
+      remainders[i] = remainder.compile();
+      if (i > 0) {
+        remainder = steps.get(i - 1).then(remainder);
+      }
+    }
+  }
+
+  public List<Basket> getAll(String json) {
+    try {
+      return getAll(FACTORY.createParser(json));
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  public List<Basket> getAll(InputStream inputStream) throws IOException {
+    return getAll(FACTORY.createParser(inputStream));
+  }
+
+  public List<Basket> getAll(Reader reader) throws IOException {
+    return getAll(FACTORY.createParser(reader));
+  }
+
+  private List<Basket> getAll(JsonParser parser) throws IOException {
+    try {
+      List<Basket> results = new ArrayList<>();
+      run(parser, collector(results));
+      return results;
+    } finally {
+      parser.close();
+    }
+  }
+
+  /**
+   * Passes each match in the value at the parser's current token, or its next token if it has not yet started, to the
+   * sink until it asks to stop, returning false if it did.
+   */
+  public boolean run(JsonParser parser, BasketSink sink) throws IOException {
+    if (parser.getCurrentToken() == null && parser.nextToken() == null) {
+      return true;
+    }
+    return evaluate(parser, 0, sink);
+  }
+
+  private boolean evaluate(JsonParser parser, int index, BasketSink sink) throws IOException {
+    if (index == steps.size()) {
+      return sink.accept(JsonReader.readCurrentValue(parser));
+    }
+
+    Strand step = steps.get(index);
+    if (step instanceof KeyStrand) {
+      return keys(parser, ((KeyStrand) step).getKeys(), index + 1, sink);
+    }
+    if (step instanceof IndexStrand && allPositive(((IndexStrand) step).getIndices())) {
+      return indices(parser, ((IndexStrand) step).getIndices(), index + 1, sink);
+    }
+    if (step instanceof WildcardStrand) {
+      return wildcard(parser, index + 1, sink);
+    }
+    if (step instanceof ConditionalStrand) {
+      return conditional(parser, ((ConditionalStrand) step).getPredicate(), index + 1, sink);
+    }
+    if (step instanceof DeepScanStrand) {
+      DeepScanStrand scan = (DeepScanStrand) step;
+      return deepScan(parser, scan.getKey(), scan.getMaxDepth(), 1, index + 1, sink);
+    }
+    return remainders[index].run(JsonReader.readCurrentValue(parser), sink);
+  }
+
+  private boolean keys(JsonParser parser, String[] keys, int next, BasketSink sink) throws IOException {
+    if (parser.getCurrentToken() != JsonToken.START_OBJECT) {
+      parser.skipChildren();
+      return true;
+    }
+
+    if (keys.length == 1) {
+      while (parser.nextToken() == JsonToken.FIELD_NAME) {
+        String name = parser.getCurrentName();
+        parser.nextToken();
+        if (!name.equals(keys[0])) {
+          parser.skipChildren();
+        } else if (!evaluate(parser, next, sink)) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    // Matches are held back until the object is finished, so that they can be passed on in the strand's key order.
+    Map<String, List<Basket>> matches = new HashMap<>();
+    for (String key : keys) {
+      matches.put(key, null);
+    }
+    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+      String name = parser.getCurrentName();
+      parser.nextToken();
+      if (matches.containsKey(name)) {
+        List<Basket> found = new ArrayList<>();
+        evaluate(parser, next, collector(found));
+        matches.put(name, found);
+      } else {
+        parser.skipChildren();
+      }
+    }
+
+    for (String key : keys) {
+      if (!passOn(matches.get(key), sink)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private boolean indices(JsonParser parser, int[] indices, int next, BasketSink sink) throws IOException {
+    if (parser.getCurrentToken() != JsonToken.START_ARRAY) {
+      parser.skipChildren();
+      return true;
+    }
+
+    if (indices.length == 1) {
+      int i = 0;
+      while (parser.nextToken() != JsonToken.END_ARRAY) {
+        if (i++ == indices[0]) {
+          if (!evaluate(parser, next, sink)) {
+            return false;
+          }
+        } else {
+          parser.skipChildren();
+        }
+      }
+      return true;
+    }
+
+    Map<Integer, List<Basket>> matches = new HashMap<>();
+    for (int index : indices) {
+      matches.put(index, null);
+    }
+    int i = 0;
+    while (parser.nextToken() != JsonToken.END_ARRAY) {
+      if (matches.containsKey(i)) {
+        List<Basket> found = new ArrayList<>();
+        evaluate(parser, next, collector(found));
+        matches.put(i, found);
+      } else {
+        parser.skipChildren();
+      }
+      i++;
+    }
+
+    for (int index : indices) {
+      if (!passOn(matches.get(index), sink)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private boolean wildcard(JsonParser parser, int next, BasketSink sink) throws IOException {
+    switch (parser.getCurrentToken()) {
+      case START_OBJECT:
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+          parser.nextToken();
+          if (!evaluate(parser, next, sink)) {
+            return false;
+          }
+        }
+        return true;
+      case START_ARRAY:
+        while (parser.nextToken() != JsonToken.END_ARRAY) {
+          if (!evaluate(parser, next, sink)) {
+            return false;
+          }
+        }
+        return true;
+      default:
+        return evaluate(parser, next, sink);
+    }
+  }
+
+  private boolean conditional(JsonParser parser, Function1<Basket, Boolean> predicate, int next, BasketSink sink)
+      throws IOException {
+    switch (parser.getCurrentToken()) {
+      case START_OBJECT:
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+          parser.nextToken();
+          if (!test(parser, predicate, next, sink)) {
+            return false;
+          }
+        }
+        return true;
+      case START_ARRAY:
+        while (parser.nextToken() != JsonToken.END_ARRAY) {
+          if (!test(parser, predicate, next, sink)) {
+            return false;
+          }
+        }
+        return true;
+      default:
+        return test(parser, predicate, next, sink);
+    }
+  }
+
+  private boolean test(JsonParser parser, Function1<Basket, Boolean> predicate, int next, BasketSink sink)
+      throws IOException {
+    Basket candidate = JsonReader.readCurrentValue(parser);
+    return !predicate.invoke(candidate) || remainders[next].run(candidate, sink);
+  }
+
+  /**
+   * Scans for the key among the values at the given depth, and those nested within them up to the maximum depth.
+   */
+  private boolean deepScan(JsonParser parser, String key, int maxDepth, int depth, int next, BasketSink sink)
+      throws IOException {
+    if (depth > maxDepth) {
+      parser.skipChildren();
+      return true;
+    }
+
+    switch (parser.getCurrentToken()) {
+      case START_OBJECT:
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+          String name = parser.getCurrentName();
+          parser.nextToken();
+          boolean continuing = name.equals(key)
+              ? evaluate(parser, next, sink)
+              : deepScan(parser, key, maxDepth, depth + 1, next, sink);
+          if (!continuing) {
+            return false;
+          }
+        }
+        return true;
+      case START_ARRAY:
+        while (parser.nextToken() != JsonToken.END_ARRAY) {
+          if (!deepScan(parser, key, maxDepth, depth + 1, next, sink)) {
+            return false;
+          }
+        }
+        return true;
+      default:
+        return true;
+    }
+  }
+
+  private static boolean allPositive(int[] indices) {
+    for (int index : indices) {
+      if (index < 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static boolean passOn(List<Basket> matches, BasketSink sink) {
+    if (matches != null) {
+      for (Basket match : matches) {
+        if (!sink.accept(match)) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
+  private static BasketSink collector(final List<Basket> results) {
+    return new BasketSink() {
+      @Override
+      public boolean accept(Basket basket) {
+        return results.add(basket);
+      }
+    };
+  }
+}
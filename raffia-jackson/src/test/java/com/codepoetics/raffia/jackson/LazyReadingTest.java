@@ -0,0 +1,71 @@
+package com.codepoetics.raffia.jackson;
+
+import com.codepoetics.raffia.baskets.Basket;
+import org.junit.Test;
+
+import static com.codepoetics.raffia.lenses.Strands.strand;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+
+public class LazyReadingTest {
+
+  private static final String JSON =
+      "{\"store\":{\"book\":[{\"author\":\"Nigel Rees\",\"price\":8.95},{\"author\":\"Evelyn Waugh\",\"price\":12.99}],"
+          + "\"bicycle\":{\"color\":\"red\",\"price\":19.95}},\"expensive\":10}";
+
+  @Test
+  public void lazyBasketEqualsEagerBasket() {
+    assertThat(JsonReader.readBasketLazily(JSON), equalTo(JsonReader.readBasket(JSON)));
+  }
+
+  @Test
+  public void mixedAndDeeplyNestedContainersReadAsEagerly() {
+    String mixed = "{\"a\":[1,{\"b\":[true,null,\"x\"]},2.5,[]],\"c\":\"d\",\"e\":{}}";
+    assertThat(JsonReader.readBasketLazily(mixed), equalTo(JsonReader.readBasket(mixed)));
+    assertThat(JsonWriter.writeBasketAsString(JsonReader.readBasketLazily(mixed)), equalTo(mixed));
+
+    StringBuilder deep = new StringBuilder();
+    for (int i = 0; i < 10000; i++) {
+      deep.append("[0,");
+    }
+    deep.append("\"leaf\"");
+    for (int i = 0; i < 10000; i++) {
+      deep.append("]");
+    }
+
+    Basket basket = JsonReader.readBasketLazily(deep.toString());
+    for (int i = 0; i < 10000; i++) {
+      assertThat(basket.getItem(0), equalTo(Basket.ofNumber(0L)));
+      basket = basket.getItem(1);
+    }
+    assertThat(basket, equalTo(Basket.ofString("leaf")));
+  }
+
+  @Test
+  public void onlyTouchedSubtreesAreParsed() {
+    Basket basket = JsonReader.readBasketLazily(JSON);
+
+    assertThat(strand("$.store.bicycle.color").getString(basket), equalTo("red"));
+
+    Basket store = basket.getProperty("store");
+    assertThat(store.asObject().getPendingSource(), nullValue());
+    assertThat(store.getProperty("bicycle").asObject().getPendingSource(), nullValue());
+    assertThat(store.getProperty("book").asArray().getPendingSource(), notNullValue());
+
+    assertThat(strand("$.store.book[*].author").getAllStrings(basket), contains("Nigel Rees", "Evelyn Waugh"));
+    assertThat(store.getProperty("book").asArray().getPendingSource(), nullValue());
+  }
+
+  @Test
+  public void untouchedSubtreesAreWrittenVerbatim() {
+    Basket basket = JsonReader.readBasketLazily(JSON);
+
+    assertThat(JsonWriter.writeBasketAsString(basket), equalTo(JSON));
+
+    Basket updated = strand("$.expensive").set(basket, "very");
+    assertThat(JsonWriter.writeBasketAsString(updated), equalTo(JSON.replace("10}", "\"very\"}")));
+  }
+}
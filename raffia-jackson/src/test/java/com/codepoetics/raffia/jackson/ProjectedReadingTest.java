@@ -0,0 +1,61 @@
+package com.codepoetics.raffia.jackson;
+
+import com.codepoetics.raffia.baskets.Basket;
+import com.codepoetics.raffia.lenses.Strand;
+import org.junit.Test;
+
+import static com.codepoetics.raffia.jackson.StoreJson.JSON;
+import static com.codepoetics.raffia.lenses.Strands.strand;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+
+public class ProjectedReadingTest {
+
+  private static final String TAGS = "{\"tags\":[[1,2],[3,[4,5]]],\"name\":\"tags\"}";
+
+  @Test
+  public void onlyMatchedPathsAreRead() {
+    Basket projected = JsonReader.readProjected(JSON, strand("$.store.book[1].title"), strand("$.expensive"));
+
+    assertThat(projected, equalTo(JsonReader.readBasket(
+        "{\"store\":{\"book\":[null,{\"title\":\"Sword of Honour\"},null,null]},\"expensive\":10}")));
+  }
+
+  @Test
+  public void deepScansAndFiltersKeepOnlyWhatTheyMatch() {
+    Basket projected = JsonReader.readProjected(JSON, strand("$..book[?(@.isbn)].author"), strand("$..color"));
+
+    assertThat(projected, equalTo(JsonReader.readBasket(
+        "{\"store\":{\"book\":[null,null,{\"author\":\"Herman Melville\"},{\"author\":\"J. R. R. Tolkien\"}],"
+            + "\"bicycle\":[{\"color\":\"red\"}]}}")));
+  }
+
+  @Test
+  public void strandsMatchTheSameValuesInTheProjection() {
+    Strand[] strands = {
+        strand("$.store.book[*].author"),
+        strand("$.store.book[2,0].title"),
+        strand("$.store.book[-1].price"),
+        strand("$.store.book[1:3].category"),
+        strand("$..price"),
+        strand("$..book[?(@.price < 10)].title"),
+        strand("$.store.bicycle.*"),
+        strand("$.store.bicycle[0].*"),
+        strand("$.missing")
+    };
+
+    Basket whole = JsonReader.readBasket(JSON);
+    Basket projected = JsonReader.readProjected(JSON, strands);
+
+    for (Strand strand : strands) {
+      assertThat(strand.getPath(), strand.getAll(projected), equalTo(strand.getAll(whole)));
+    }
+  }
+
+  @Test
+  public void nestedArraysKeepOnlyTheItemsMatched() {
+    Basket projected = JsonReader.readProjected(TAGS, strand("$.tags[*][1]"));
+
+    assertThat(projected, equalTo(JsonReader.readBasket("{\"tags\":[[null,2],[null,[4,5]]]}")));
+  }
+}
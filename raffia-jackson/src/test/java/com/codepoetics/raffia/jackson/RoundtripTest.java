@@ -1,16 +1,21 @@
 package com.codepoetics.raffia.jackson;
 
 import com.codepoetics.raffia.baskets.Basket;
+import com.codepoetics.raffia.baskets.BasketInterner;
 import com.codepoetics.raffia.predicates.NumberPredicates;
 import com.codepoetics.raffia.writers.BasketWeavingWriter;
 import com.codepoetics.raffia.writers.PassThroughWriter;
 import org.junit.Test;
 
 import java.io.IOException;
+import java.math.BigDecimal;
 
 import static com.codepoetics.raffia.lenses.Strands.strand;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
 
 public class RoundtripTest {
 
@@ -26,4 +31,48 @@ public class RoundtripTest {
     System.out.println(repr);
   }
 
+  @Test
+  public void readsNumbersWithoutLosingPrecision() {
+    Basket basket = JsonReader.readBasket(
+        "{\"int\": 42, \"long\": 9007199254740993, \"big\": 123456789012345678901234567890, \"float\": 8.95}");
+
+    assertThat(strand("$.int").getNumber(basket), equalTo(new BigDecimal("42")));
+    assertThat(strand("$.long").getNumber(basket), equalTo(new BigDecimal("9007199254740993")));
+    assertThat(strand("$.big").getNumber(basket), equalTo(new BigDecimal("123456789012345678901234567890")));
+    assertThat(strand("$.float").getNumber(basket), equalTo(new BigDecimal("8.95")));
+
+    assertThat(JsonReader.readBasket(JsonWriter.writeBasketAsString(basket)), equalTo(basket));
+  }
+
+  @Test
+  public void canonicalisesRepeatedSubtrees() {
+    String json = "[{\"currency\": \"GBP\", \"amount\": 1}, {\"currency\": \"GBP\", \"amount\": 1}]";
+
+    Basket plain = JsonReader.readBasket(json);
+    assertThat(plain.getItem(1), not(sameInstance(plain.getItem(0))));
+
+    BasketInterner interner = new BasketInterner();
+    Basket canonical = JsonReader.readBasket(json, interner);
+    assertThat(canonical, equalTo(plain));
+    assertThat(canonical.getItem(1), sameInstance(canonical.getItem(0)));
+
+    Basket again = JsonReader.readBasket(json, interner);
+    assertThat(again.getItem(0), sameInstance(canonical.getItem(0)));
+  }
+
+  @Test
+  public void internedNumbersKeepTheirScale() throws IOException {
+    BasketInterner interner = new BasketInterner();
+    Basket plain = interner.intern(Basket.ofNumber(new BigDecimal("2.5")));
+    Basket scaled = interner.intern(Basket.ofNumber(new BigDecimal("2.50")));
+    assertThat(scaled.asNumber().scale(), equalTo(2));
+
+    Basket array = interner.intern(Basket.ofArray(plain));
+    Basket scaledArray = interner.intern(Basket.ofArray(scaled));
+    assertThat(JsonWriter.writeBasketAsString(scaledArray), equalTo("[2.50]"));
+    assertThat(interner.intern(Basket.ofArray(interner.intern(Basket.ofNumber(new BigDecimal("2.50"))))),
+        sameInstance(scaledArray));
+    assertThat(array, not(sameInstance(scaledArray)));
+  }
+
 }
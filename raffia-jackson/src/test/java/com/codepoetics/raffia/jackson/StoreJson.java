@@ -0,0 +1,23 @@
+package com.codepoetics.raffia.jackson;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+public class StoreJson {
+
+  public static final String JSON = read("/store.json");
+
+  private static String read(String resource) {
+    try (InputStream input = StoreJson.class.getResourceAsStream(resource)) {
+      ByteArrayOutputStream output = new ByteArrayOutputStream();
+      byte[] buffer = new byte[4096];
+      for (int read = input.read(buffer); read != -1; read = input.read(buffer)) {
+        output.write(buffer, 0, read);
+      }
+      return output.toString("UTF-8");
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+}
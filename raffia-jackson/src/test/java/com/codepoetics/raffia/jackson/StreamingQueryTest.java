@@ -0,0 +1,89 @@
+package com.codepoetics.raffia.jackson;
+
+import com.codepoetics.raffia.baskets.Basket;
+import com.codepoetics.raffia.lenses.BasketSink;
+import com.codepoetics.raffia.lenses.Strand;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.codepoetics.raffia.jackson.StoreJson.JSON;
+import static com.codepoetics.raffia.lenses.Strands.strand;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.equalTo;
+
+public class StreamingQueryTest {
+
+  private static final String TAGS = "{\"tags\":[[1,2],[3,[4,5]]]}";
+
+  private static final String[] PATHS = {
+      "$",
+      "$.store.book[1].title",
+      "$.store.book[*].author",
+      "$.store.book[2,0].title",
+      "$.store['bicycle','book'][0]",
+      "$.store.book[-1].title",
+      "$.store.book[1:3].price",
+      "$..price",
+      "$..book[?(@.isbn)].title",
+      "$..book[?(@.price < 10)]",
+      "$.store.bicycle.*",
+      "$.store.bicycle[0].*",
+      "$.missing..price"
+  };
+
+  @Test
+  public void streamingMatchesEvaluatingAReadBasket() {
+    Basket basket = JsonReader.readBasket(JSON);
+    for (String path : PATHS) {
+      assertThat(path, StreamingQuery.of(path).getAll(JSON), equalTo(strand(path).getAll(basket)));
+    }
+
+    Basket tags = JsonReader.readBasket(TAGS);
+    Strand nested = strand("$.tags[*][1]");
+    assertThat(StreamingQuery.of(nested).getAll(TAGS), equalTo(nested.getAll(tags)));
+    Strand everything = strand("$.tags").toEverything();
+    assertThat(StreamingQuery.of(everything).getAll(TAGS), equalTo(everything.getAll(tags)));
+
+    for (int maxDepth = 0; maxDepth < 5; maxDepth++) {
+      Strand bounded = strand("$").toDeep("price", maxDepth);
+      assertThat("depth " + maxDepth, StreamingQuery.of(bounded).getAll(JSON), equalTo(bounded.getAll(basket)));
+    }
+  }
+
+  @Test
+  public void readsFromAnInputStream() throws IOException {
+    List<Basket> titles = StreamingQuery.of("$..title").getAll(new ByteArrayInputStream(JSON.getBytes(Charset.forName("UTF-8"))));
+
+    assertThat(titles, contains(
+        Basket.ofString("Sayings of the Century"),
+        Basket.ofString("Sword of Honour"),
+        Basket.ofString("Moby Dick"),
+        Basket.ofString("The Lord of the Rings")));
+  }
+
+  @Test
+  public void stopsReadingWhenTheSinkAsksItTo() throws IOException {
+    final List<Basket> authors = new ArrayList<>();
+    JsonParser parser = new JsonFactory().createParser(JSON);
+
+    boolean finished = StreamingQuery.of("$..author").run(parser, new BasketSink() {
+      @Override
+      public boolean accept(Basket basket) {
+        authors.add(basket);
+        return authors.size() < 2;
+      }
+    });
+
+    assertThat(finished, equalTo(false));
+    assertThat(authors, contains(Basket.ofString("Nigel Rees"), Basket.ofString("Evelyn Waugh")));
+    assertThat(parser.getCurrentName(), equalTo("author"));
+  }
+}